@@ -3,32 +3,37 @@ package fs.gui;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
-import javax.swing.text.html.HTMLWriter;
 
 import java.util.*;
 import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
 import org.dom4j.Document;
 
 import fs.xml.*;
 import fs.log.*;
 
 /**
- * Implements a window that contains a text area for displaying log messages,
+ * Implements a window that contains a list for displaying log messages,
  * some basic filter options and a button for saving the current log text.
  * Appending of log messages is done via its data model which must implement
  * LogHistoryModel (which in turn extends AppenderSkeleton and can thus be added
- * as Appender to a Logger). The messages will be appended in html format. Since
- * line breaks are not added automatically, the appender should take care of
- * that in its layout (the default appender does of course do so).
+ * as Appender to a Logger). The messages are displayed in html format, one
+ * message per row. <br>
+ * The list is virtual: Only the rows currently visible are requested from
+ * the model (via LogHistoryModel.getLogHistory(int, int)) and rendered, and
+ * all rows have the same height. Hence the window stays responsive, no matter
+ * how many messages the model holds. The rows are as wide as the widest row
+ * displayed so far, so that long messages can be scrolled to.
  * 
  * @author Simon Hampe
  * 
@@ -45,13 +50,15 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 	private JButton saveButton = new JButton();
 	// private ArrayList<JCheckBox> filterchecks = new ArrayList<JCheckBox>();
 	private JPanel filterpanel = new JPanel();
-	private JEditorPane display = new JEditorPane();
+	private JList<String> display;
 
 	// DATA MODEL **********************************
 	// *********************************************
 
 	// The internal data model
 	private LogHistoryModel model;
+	// The list model of the display, which reads its rows from the data model
+	private HistoryListModel listModel = new HistoryListModel();
 	// An internal copy of the filter set of the model. It is kept for graphical
 	// performance
 	// purposes.
@@ -59,11 +66,14 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 	// The change listener for the model which will update
 	// the display and the filter checkboxes
 	private LogHistoryListener updateListener = new LogHistoryListener() {
-		public void messageAppended(String formattedMessage) {
-			// Insert text and repaint
-			// TODO: This is inefficient. Messages should be appended. Perhaps,
-			// an HTMLDocument with external stylesheet should be used?
-			reloadMessages();
+		public void messageAppended(LoggingEvent event) {
+			// Messages may be appended by any thread and in large numbers, so
+			// all messages appended until the event dispatch thread gets to it
+			// are displayed by a single reload
+			if (!reloadScheduled) {
+				reloadScheduled = true;
+				SwingUtilities.invokeLater(scheduledReload);
+			}
 		}
 
 		public void filterChanged(Level l, boolean flag) {
@@ -75,6 +85,21 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 			reloadMessages();
 		}
 	};
+	// Whether a reload of the messages is pending
+	private volatile boolean reloadScheduled = false;
+	// Reloads the messages on the event dispatch thread
+	private Runnable scheduledReload = new Runnable() {
+		public void run() {
+			reloadScheduled = false;
+			reloadMessages();
+		}
+	};
+	// Widens the rows, when other rows become visible
+	private ChangeListener viewportListener = new ChangeListener() {
+		public void stateChanged(ChangeEvent e) {
+			updateCellWidth();
+		}
+	};
 	// The change listener listening to check box clicks
 	private ActionListener checkListener = new ActionListener() {
 		public void actionPerformed(ActionEvent e) {
@@ -160,9 +185,21 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 
 		// Initialize components and additional components, such as dummy
 		// components
-		display.setEditable(false);
-		display.setContentType("text/html");
-		display.setEditorKit(new HTMLEditorKit());
+		display = new JList<String>(listModel) {
+			private static final long serialVersionUID = 1L;
+
+			// Use the full width of the viewport, if it is wider than the rows
+			@Override
+			public boolean getScrollableTracksViewportWidth() {
+				return getParent() instanceof JViewport
+						&& getParent().getWidth() > getPreferredSize().width;
+			}
+		};
+		display.setCellRenderer(new HistoryCellRenderer());
+		// Fixed cell sizes, so that the list never measures all rows. The
+		// width grows with the visible rows (see updateCellWidth())
+		display.setPrototypeCellValue(String.format(
+				"<pre> <font color='#000000'>%-100s</font></pre>", "INFO"));
 		saveButton.setIcon(new ImageIcon(resource.getFullResourcePath(this,
 				"graphics/LogHistoryWindow/save.png")));
 		saveButton.setToolTipText(this.loader.getString(
@@ -181,6 +218,7 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 																		// filter
 																		// panel
 		JScrollPane scrollPane = new JScrollPane(display);
+		scrollPane.getViewport().addChangeListener(viewportListener);
 
 		// Initialize layout
 		GridBagLayout gbl = new GridBagLayout();
@@ -270,9 +308,9 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 	}
 
 	/**
-	 * @return The Editor Pane used to display
+	 * @return The list used to display the messages
 	 */
-	public JEditorPane getDisplay() {
+	public JList<String> getDisplay() {
 		return display;
 	}
 
@@ -280,17 +318,41 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 	// **********************************************
 
 	/**
-	 * Reloads the complete message history from the associated appender
-	 * (filtered according to it's filter properties) and repaints the
-	 * displaying component afterwards.
+	 * Reloads the message history from the associated appender (filtered
+	 * according to it's filter properties) and repaints the displaying
+	 * component afterwards. Only the number of messages is queried, the
+	 * visible rows are read when they are painted. If the last message was
+	 * visible before, the list scrolls to the new last message.
 	 */
 	public void reloadMessages() {
-		StringBuilder history = new StringBuilder();
-		for (String m : model.getLogHistory()) {
-			history.append(m);
+		int last = listModel.getSize() - 1;
+		boolean atEnd = last < 0
+				|| display.getLastVisibleIndex() >= last;
+		listModel.update(model.getLogHistorySize());
+		if (atEnd && listModel.getSize() > 0)
+			display.ensureIndexIsVisible(listModel.getSize() - 1);
+		updateCellWidth();
+		display.repaint();
+	}
+
+	/**
+	 * Widens all rows of the display, if a visible row is wider than the
+	 * current cell width. Only the visible rows are measured.
+	 */
+	protected void updateCellWidth() {
+		int first = display.getFirstVisibleIndex();
+		int last = display.getLastVisibleIndex();
+		if (first < 0)
+			return;
+		ListCellRenderer<? super String> renderer = display.getCellRenderer();
+		int width = display.getFixedCellWidth();
+		for (int i = first; i <= last && i < listModel.getSize(); i++) {
+			Component c = renderer.getListCellRendererComponent(display,
+					listModel.getElementAt(i), i, false, false);
+			width = Math.max(width, c.getPreferredSize().width);
 		}
-		display.setText(history.toString());
-		repaint();
+		if (width > display.getFixedCellWidth())
+			display.setFixedCellWidth(width);
 	}
 
 	/**
@@ -346,14 +408,20 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 	 *             - if any I/O-error occurs
 	 */
 	public void saveLog(File f) throws IOException {
-		HTMLDocument doc = (HTMLDocument) display.getDocument();
-		FileWriter output = new FileWriter(f);
-		HTMLWriter writer = new HTMLWriter(output, doc);
+		Writer output = new BufferedWriter(new FileWriter(f));
 		try {
-			writer.write();
+			output.write("<html>\n<head>\n</head>\n<body>\n");
+			// Read the history page by page
+			int size = model.getLogHistorySize();
+			for (int i = 0; i < size; i += savePageSize) {
+				for (String m : model.getLogHistory(i, savePageSize)) {
+					output.write(m);
+					output.write('\n');
+				}
+			}
+			output.write("</body>\n</html>\n");
+		} finally {
 			output.close();
-		} catch (BadLocationException ble) {
-			// Won't happen
 		}
 	}
 
@@ -374,6 +442,63 @@ public class LogHistoryWindow extends JFrame implements ResourceDependent {
 			saveLog(f);
 	}
 
+	// LIST MODEL AND RENDERER **********************
+	// **********************************************
+
+	// The number of messages read at once when saving the log
+	private final static int savePageSize = 1000;
+
+	/**
+	 * The list model of the display. It only stores the number of displayed
+	 * messages and reads each row from the data model when it is requested.
+	 */
+	private class HistoryListModel extends AbstractListModel<String> {
+		private static final long serialVersionUID = 1L;
+
+		private int size = 0;
+
+		/**
+		 * Sets the number of messages and notifies the list. Since messages
+		 * may have been evicted at the front as well, existing rows are
+		 * reported as changed. This is cheap, because the list has fixed
+		 * cell sizes.
+		 */
+		void update(int newSize) {
+			int oldSize = size;
+			size = newSize;
+			if (newSize < oldSize)
+				fireIntervalRemoved(this, newSize, oldSize - 1);
+			if (newSize > oldSize)
+				fireIntervalAdded(this, oldSize, newSize - 1);
+			if (Math.min(oldSize, newSize) > 0)
+				fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public String getElementAt(int index) {
+			ArrayList<String> row = model.getLogHistory(index, 1);
+			return row.isEmpty() ? "" : row.get(0);
+		}
+	}
+
+	/**
+	 * Renders a formatted message as html
+	 */
+	private static class HistoryCellRenderer extends DefaultListCellRenderer {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Component getListCellRendererComponent(JList<?> list,
+				Object value, int index, boolean isSelected,
+				boolean cellHasFocus) {
+			return super.getListCellRendererComponent(list, "<html>" + value
+					+ "</html>", index, isSelected, cellHasFocus);
+		}
+	}
+
 	// RESOURCEDEPENDENT METHODS ********************
 	// **********************************************
 
@@ -5,11 +5,18 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.IOException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.*;
 
 import org.apache.log4j.*;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 import org.dom4j.Document;
 
@@ -28,7 +35,12 @@ import fs.xml.*;
  * A user can append his own application messages, though it would make more
  * sense to wrap these messages in a logger. <br>
  * The component's output is controlled via an internal LogHistoryModel, by
- * default with a slightly different layout than the default one.
+ * default with a slightly different layout than the default one. <br>
+ * Logging events are delivered asynchronously: The appender returned by
+ * getModel() only puts each event into a lock-free queue, so a logging thread
+ * never waits for the user interface. The queue is drained in batches on the
+ * event dispatch thread by a coalescing timer, which forwards the events to
+ * the LogHistoryWindow's model and displays the most recent one in the label.
  * 
  * @author Simon Hampe
  * 
@@ -53,6 +65,67 @@ public class SwingAppender extends JLabel implements ResourceDependent {
 	 */
 	private LabelAppender labelAppender = new LabelAppender();
 
+	/**
+	 * Events are delivered at most this many milliseconds after they have been
+	 * appended
+	 */
+	private final static int deliveryDelay = 50;
+
+	/**
+	 * The maximal time in milliseconds spent on delivering events at once. If
+	 * more events are pending, the rest is delivered immediately afterwards,
+	 * so that other events on the event dispatch thread are processed in
+	 * between
+	 */
+	private final static long maxBatchTime = 20;
+
+	/**
+	 * The maximal number of pending events. If more events are appended, the
+	 * oldest ones are dropped
+	 */
+	private final static int maxPendingEvents = 100000;
+
+	/**
+	 * The events appended, but not yet delivered
+	 */
+	private final ConcurrentLinkedQueue<LoggingEvent> pendingEvents = new ConcurrentLinkedQueue<LoggingEvent>();
+
+	/**
+	 * The number of pending events
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	/**
+	 * The number of events dropped since the last delivery
+	 */
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * Whether the delivery timer has been started for the pending events
+	 */
+	private final AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+
+	/**
+	 * The timer delivering pending events on the event dispatch thread
+	 */
+	private final Timer deliveryTimer = new Timer(deliveryDelay,
+			new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					deliverPendingEvents();
+				}
+			});
+
+	/**
+	 * Continues a delivery which has exceeded maxBatchTime
+	 */
+	private final Runnable continueDelivery = new Runnable() {
+		@Override
+		public void run() {
+			deliverPendingEvents();
+		}
+	};
+
 	// VIEW ********************************************
 	// *************************************************
 
@@ -140,6 +213,9 @@ public class SwingAppender extends JLabel implements ResourceDependent {
 		// Initialize icons
 		reloadResources();
 
+		// Init delivery
+		deliveryTimer.setRepeats(false);
+
 		// Init state
 		setText("");
 		setIcon(okIcon);
@@ -284,6 +360,60 @@ public class SwingAppender extends JLabel implements ResourceDependent {
 		}
 	}
 
+	// DELIVERY METHODS **************************
+	// *******************************************
+
+	/**
+	 * Starts the delivery timer, unless it has already been started for the
+	 * pending events. May be called from any thread.
+	 */
+	private void scheduleDelivery() {
+		if (deliveryScheduled.compareAndSet(false, true))
+			deliveryTimer.restart();
+	}
+
+	/**
+	 * Forwards the pending events to the LogHistoryWindow's model and the most
+	 * recent one to the label. If this takes longer than maxBatchTime, the
+	 * remaining events are delivered by another call, which is queued on the
+	 * event dispatch thread right away. If events have been dropped, a
+	 * warning is delivered first. Must be called on the event dispatch thread.
+	 */
+	private void deliverPendingEvents() {
+		// Events appended from now on need a new delivery
+		deliveryScheduled.set(false);
+		LoggingEvent last = null;
+		LogHistoryModel model = window.getModel();
+		long dropped = droppedEvents.getAndSet(0);
+		if (dropped > 0) {
+			last = new LoggingEvent(SwingAppender.class.getName(), Logger
+					.getLogger(SwingAppender.class), Level.WARN, loader
+					.getString("fs.gui.SwingAppender.dropped", languageID,
+							Long.toString(dropped)), null);
+			model.doAppend(last);
+		}
+		long end = System.currentTimeMillis() + maxBatchTime;
+		for (int i = 1;; i++) {
+			LoggingEvent event = pendingEvents.poll();
+			if (event == null)
+				break;
+			pendingCount.decrementAndGet();
+			model.doAppend(event);
+			last = event;
+			// Check the time only now and then
+			if (i % 100 == 0 && System.currentTimeMillis() >= end) {
+				if (!pendingEvents.isEmpty()) {
+					deliveryScheduled.set(true);
+					deliveryTimer.stop();
+					SwingUtilities.invokeLater(continueDelivery);
+				}
+				break;
+			}
+		}
+		if (last != null)
+			labelAppender.doAppend(last);
+	}
+
 	// RESOURCEDEPENDENT METHODS *****************
 	// *******************************************
 
@@ -329,7 +459,8 @@ public class SwingAppender extends JLabel implements ResourceDependent {
 	/**
 	 * This class implements an appender that does nothing but forward any
 	 * appended logging events to the Label's logging model and the
-	 * LogHistoryWindow's logging model
+	 * LogHistoryWindow's logging model. Events are queued and forwarded later
+	 * on the event dispatch thread.
 	 * 
 	 * @author Simon Hampe
 	 * 
@@ -337,13 +468,43 @@ public class SwingAppender extends JLabel implements ResourceDependent {
 	private class ForwardAppender extends AppenderSkeleton {
 
 		/**
-		 * Forward the logging event to the JLabel's and the LogHistoryWindow's
-		 * appender
+		 * Applies threshold and filters like AppenderSkeleton.doAppend(..),
+		 * but without locking this appender, so that concurrent logging
+		 * threads don't block each other
+		 */
+		@Override
+		public void doAppend(LoggingEvent event) {
+			if (closed || !isAsSevereAsThreshold(event.getLevel()))
+				return;
+			for (Filter f = getFirstFilter(); f != null; f = f.getNext()) {
+				int decision = f.decide(event);
+				if (decision == Filter.DENY)
+					return;
+				if (decision == Filter.ACCEPT)
+					break;
+			}
+			append(event);
+		}
+
+		/**
+		 * Queue the logging event for the JLabel's and the LogHistoryWindow's
+		 * appender. The thread dependent data of the event is copied now, since
+		 * the event is formatted by another thread. If there are too many
+		 * pending events, the oldest one is dropped.
 		 */
 		@Override
 		protected void append(LoggingEvent arg0) {
-			labelAppender.doAppend(arg0);
-			window.getModel().doAppend(arg0);
+			arg0.getThreadName();
+			arg0.getNDC();
+			arg0.getMDCCopy();
+			arg0.getRenderedMessage();
+			pendingEvents.add(arg0);
+			if (pendingCount.incrementAndGet() > maxPendingEvents
+					&& pendingEvents.poll() != null) {
+				pendingCount.decrementAndGet();
+				droppedEvents.incrementAndGet();
+			}
+			scheduleDelivery();
 		}
 
 		/**
@@ -1,6 +1,7 @@
 package fs.log;
 
 import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
 
 import java.util.*;
 
@@ -35,6 +36,20 @@ public abstract class AbstractLogHistoryModel extends AppenderSkeleton
 	 */
 	public abstract ArrayList<String> getLogHistory();
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fs.log.LogHistoryModel#getLogHistorySize()
+	 */
+	public abstract int getLogHistorySize();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fs.log.LogHistoryModel#getLogHistory(int, int)
+	 */
+	public abstract ArrayList<String> getLogHistory(int fromIndex, int maxCount);
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -82,12 +97,20 @@ public abstract class AbstractLogHistoryModel extends AppenderSkeleton
 		listeners.remove(l);
 	}
 
+	/**
+	 * @return Whether any listeners are registered. Subclasses may use this to
+	 *         avoid preparing notifications nobody receives
+	 */
+	protected boolean hasLogHistoryListeners() {
+		return !listeners.isEmpty();
+	}
+
 	/**
 	 * Notifies all registered listeners of an appended message
 	 */
-	protected void notifyMessageAppended(String formattedMessage) {
+	protected void notifyMessageAppended(LoggingEvent event) {
 		for (LogHistoryListener l : listeners) {
-			l.messageAppended(formattedMessage);
+			l.messageAppended(event);
 		}
 	}
 
@@ -1,14 +1,30 @@
 package fs.log;
 
+import java.io.*;
 import java.util.*;
 
 import org.apache.log4j.*;
+import org.apache.log4j.spi.ErrorCode;
+import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
 
 /**
  * Provides the standard model implementation for LogHistoryWindow. Appended
- * messages are stored internally in a sorted list as a string conforming to the
- * appendes layout together with the log events level. This class also supports
+ * events are stored internally in a sorted list in a compact raw form (level,
+ * time stamp, logger, thread name, rendered message and throwable). They are
+ * formatted by the appender's layout only when they are requested, e.g. when
+ * a window displays them. A small cache keeps the most recently formatted
+ * messages. Since location information, NDC and MDC are not stored, layouts
+ * should not rely on them. Messages of levels which are not displayed are
+ * never formatted (unless they are written to the spill file). <br>
+ * The history is bounded: It is kept in a ring buffer holding at most
+ * getMaxEntries() messages and (optionally) at most getMaxBytes() bytes
+ * (estimated). If a limit is exceeded, the oldest messages are evicted. If a
+ * spill file is set, evicted messages are appended to this file, which is
+ * rolled over to (spill file).1 as soon as it exceeds getMaxSpillFileSize()
+ * bytes. All limits can be configured as appender options. <br>
+ * This class also supports
  * the basic level-oriented filtering mechanism defined by AbstractLogHistory:
  * For each Level a boolean value can be configured that specifies if messages
  * of this level should be returned by getLogHistory(). By default, all
@@ -28,9 +44,80 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 	public final static String DLHWM_PATTERN_LAYOUT = "%-7p [%d{HH:mm:ss}] %m";
 
 	/**
-	 * The internal list of messages
+	 * The default maximal number of messages kept in the history. The current
+	 * value is 5000
 	 */
-	private ArrayList<LevelAnnotatedMessage> loghistory = new ArrayList<LevelAnnotatedMessage>();
+	public final static int DEFAULT_MAX_ENTRIES = 5000;
+
+	/**
+	 * The default maximal size of the spill file. The current value is 1 MB
+	 */
+	public final static long DEFAULT_MAX_SPILL_FILE_SIZE = 1024 * 1024;
+
+	/**
+	 * The number of formatted messages kept in the cache
+	 */
+	private final static int formatCacheSize = 256;
+
+	/**
+	 * The ring buffer of messages. The oldest message is at index first, the
+	 * buffer grows on demand up to maxEntries
+	 */
+	private LogEntry[] loghistory = new LogEntry[16];
+	private int first = 0;
+	private int size = 0;
+
+	/**
+	 * The estimated number of bytes occupied by the messages in the buffer
+	 */
+	private long bytes = 0;
+
+	/**
+	 * The limits of the buffer. A value <= 0 means unlimited
+	 */
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxBytes = 0;
+
+	/**
+	 * The sequence number of the oldest message in the buffer. Each message
+	 * gets the sequence number of its predecessor + 1
+	 */
+	private long firstSeq = 0;
+
+	/**
+	 * The sequence numbers of the stored messages of each level, in ascending
+	 * order
+	 */
+	private HashMap<Level, LongRing> levelIndex = new HashMap<Level, LongRing>();
+
+	/**
+	 * The sequence numbers of all stored messages that are displayed, in
+	 * ascending order. This is the list returned by getLogHistory()
+	 */
+	private LongRing displayedIndex = new LongRing(16);
+
+	/**
+	 * The most recently formatted messages. It is cleared when the layout
+	 * changes
+	 */
+	private LinkedHashMap<LogEntry, String> formatCache = new LinkedHashMap<LogEntry, String>(
+			formatCacheSize, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LogEntry, String> eldest) {
+			return size() > formatCacheSize;
+		}
+	};
+
+	/**
+	 * The file evicted messages are written to (null, if they are discarded),
+	 * the writer for this file (opened on demand) and the current file size
+	 */
+	private File spillFile = null;
+	private long maxSpillFileSize = DEFAULT_MAX_SPILL_FILE_SIZE;
+	private Writer spillWriter = null;
+	private long spillFileSize = 0;
 
 	/**
 	 * Indicates for each Level, if messages of this level should be returned by
@@ -64,7 +151,10 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 	 * a value has already been specified, it is replaced by the new one.
 	 */
 	public void putFilter(Level l, boolean isDisplayed) {
-		this.isDisplayed.put(l, isDisplayed);
+		synchronized (this) {
+			this.isDisplayed.put(l, isDisplayed);
+			rebuildDisplayedIndex();
+		}
 		notifyFilterChanged(l, isDisplayed);
 	}
 
@@ -74,7 +164,7 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 	 * been configured), true is returned, since by default, all unconfigured
 	 * levels are displayed.
 	 */
-	public boolean isLevelDisplayed(Level l) {
+	public synchronized boolean isLevelDisplayed(Level l) {
 		Boolean b = isDisplayed.get(l);
 		if (b == null)
 			return true;
@@ -86,24 +176,322 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 	 * Returns a table containing all Levels for which a flag has been
 	 * specified, with their respective flags.
 	 */
-	public HashMap<Level, Boolean> getFilterTable() {
+	public synchronized HashMap<Level, Boolean> getFilterTable() {
 		return new HashMap<Level, Boolean>(isDisplayed);
 	}
 
+	// BUFFER CONTROL METHODS *******************
+	// ******************************************
+
+	/**
+	 * @return The maximal number of messages kept in the history (<= 0 means
+	 *         unlimited)
+	 */
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Sets the maximal number of messages kept in the history. If more
+	 * messages are stored, the oldest ones are evicted immediately. A value <=
+	 * 0 means unlimited.
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evict();
+		if (maxEntries > 0 && loghistory.length > Math.max(maxEntries, 16))
+			resize(Math.max(size, 16));
+	}
+
+	/**
+	 * @return The maximal (estimated) number of bytes occupied by the history
+	 *         (<= 0 means unlimited)
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the maximal (estimated) number of bytes occupied by the history. If
+	 * the stored messages need more, the oldest ones are evicted immediately,
+	 * but the most recent message is always kept. A value <= 0 means
+	 * unlimited.
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * @return The file evicted messages are appended to or null, if they are
+	 *         discarded
+	 */
+	public synchronized File getSpillFile() {
+		return spillFile;
+	}
+
+	/**
+	 * Sets the file evicted messages are appended to (in the format of the
+	 * layout, one message per line). If path is null or empty, evicted
+	 * messages are discarded. Messages are buffered and written at the latest
+	 * when the appender is closed.
+	 */
+	public synchronized void setSpillFile(String path) {
+		closeSpillWriter();
+		spillFile = (path == null || path.length() == 0) ? null : new File(
+				path);
+	}
+
+	/**
+	 * @return The size in bytes above which the spill file is rolled over
+	 */
+	public synchronized long getMaxSpillFileSize() {
+		return maxSpillFileSize;
+	}
+
+	/**
+	 * Sets the size in bytes above which the spill file is renamed to (spill
+	 * file).1 (replacing an older version) and a new spill file is started. A
+	 * value <= 0 means the file is never rolled over.
+	 */
+	public synchronized void setMaxSpillFileSize(long maxSpillFileSize) {
+		this.maxSpillFileSize = maxSpillFileSize;
+	}
+
+	/**
+	 * @return The number of messages currently stored, regardless of any
+	 *         filter
+	 */
+	public synchronized int getMessageCount() {
+		return size;
+	}
+
+	/**
+	 * @return The estimated number of bytes occupied by the stored messages
+	 */
+	public synchronized long getStoredBytes() {
+		return bytes;
+	}
+
 	// LHWMODEL METHODS *************************
 	// ******************************************
 
 	@Override
 	public ArrayList<String> getLogHistory() {
-		ArrayList<String> ret = new ArrayList<String>();
-		for (LevelAnnotatedMessage lam : loghistory) {
-			if (isLevelDisplayed(lam.getLevel())) {
-				ret.add(lam.getMessage());
-			}
+		return getLogHistory(0, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public synchronized int getLogHistorySize() {
+		return displayedIndex.size();
+	}
+
+	@Override
+	public synchronized ArrayList<String> getLogHistory(int fromIndex,
+			int maxCount) {
+		int from = Math.max(fromIndex, 0);
+		int to = (int) Math.min((long) from + Math.max(maxCount, 0),
+				displayedIndex.size());
+		ArrayList<String> ret = new ArrayList<String>(Math.max(to - from, 0));
+		for (int i = from; i < to; i++) {
+			ret.add(format(get((int) (displayedIndex.get(i) - firstSeq))));
 		}
 		return ret;
 	}
 
+	// LEVEL INDEXES ****************************
+	// ******************************************
+
+	/**
+	 * Recreates the index of displayed messages by merging the indexes of all
+	 * displayed levels
+	 */
+	private void rebuildDisplayedIndex() {
+		ArrayList<LongRing> merged = new ArrayList<LongRing>();
+		int count = 0;
+		for (Level l : levelIndex.keySet()) {
+			if (isLevelDisplayed(l)) {
+				merged.add(levelIndex.get(l));
+				count += levelIndex.get(l).size();
+			}
+		}
+		displayedIndex = new LongRing(Math.max(count, 16));
+		int[] pos = new int[merged.size()];
+		for (int n = 0; n < count; n++) {
+			// There are only a few levels, so we look for the minimum directly
+			int min = -1;
+			for (int j = 0; j < pos.length; j++) {
+				if (pos[j] < merged.get(j).size()
+						&& (min < 0 || merged.get(j).get(pos[j]) < merged.get(
+								min).get(pos[min])))
+					min = j;
+			}
+			displayedIndex.addLast(merged.get(min).get(pos[min]));
+			pos[min]++;
+		}
+	}
+
+	// RING BUFFER ******************************
+	// ******************************************
+
+	/**
+	 * Returns the i-th oldest message in the buffer
+	 */
+	private LogEntry get(int i) {
+		return loghistory[(first + i) % loghistory.length];
+	}
+
+	/**
+	 * Appends a message to the buffer, evicting the oldest messages if
+	 * necessary
+	 */
+	private void add(LogEntry entry) {
+		if (maxEntries > 0 && size >= maxEntries)
+			evictOldest();
+		if (size == loghistory.length) {
+			int capacity = 2 * loghistory.length;
+			if (maxEntries > 0)
+				capacity = Math.max(size + 1, Math.min(capacity, maxEntries));
+			resize(capacity);
+		}
+		loghistory[(first + size) % loghistory.length] = entry;
+		long seq = firstSeq + size;
+		size++;
+		LongRing index = levelIndex.get(entry.level);
+		if (index == null) {
+			index = new LongRing(16);
+			levelIndex.put(entry.level, index);
+		}
+		index.addLast(seq);
+		if (isLevelDisplayed(entry.level))
+			displayedIndex.addLast(seq);
+		bytes += estimateSize(entry);
+		evict();
+	}
+
+	/**
+	 * Evicts the oldest messages until all limits are met (but always keeps
+	 * the most recent message, if the byte limit is exceeded)
+	 */
+	private void evict() {
+		while (maxEntries > 0 && size > maxEntries)
+			evictOldest();
+		while (maxBytes > 0 && bytes > maxBytes && size > 1)
+			evictOldest();
+	}
+
+	/**
+	 * Removes the oldest message from the buffer and spills it
+	 */
+	private void evictOldest() {
+		LogEntry entry = loghistory[first];
+		loghistory[first] = null;
+		first = (first + 1) % loghistory.length;
+		size--;
+		levelIndex.get(entry.level).removeFirst();
+		if (displayedIndex.size() > 0 && displayedIndex.getFirst() == firstSeq)
+			displayedIndex.removeFirst();
+		firstSeq++;
+		bytes -= estimateSize(entry);
+		spill(entry);
+		formatCache.remove(entry);
+	}
+
+	/**
+	 * Copies the messages to a new buffer of the given capacity (which must
+	 * be at least size)
+	 */
+	private void resize(int capacity) {
+		LogEntry[] newhistory = new LogEntry[capacity];
+		for (int i = 0; i < size; i++) {
+			newhistory[i] = get(i);
+		}
+		loghistory = newhistory;
+		first = 0;
+	}
+
+	/**
+	 * Estimates the number of bytes occupied by a message: Two bytes per
+	 * character and some overhead for the objects
+	 */
+	private static long estimateSize(LogEntry entry) {
+		return 2L * entry.message.length() + 64;
+	}
+
+	// FORMATTING *******************************
+	// ******************************************
+
+	/**
+	 * Returns the message formatted by the current layout, using the cache
+	 */
+	private String format(LogEntry entry) {
+		String msg = formatCache.get(entry);
+		if (msg == null) {
+			msg = getLayout().format(entry.toEvent());
+			formatCache.put(entry, msg);
+		}
+		return msg;
+	}
+
+	/**
+	 * Sets the layout used for formatting messages. All messages are
+	 * formatted anew by this layout.
+	 */
+	@Override
+	public synchronized void setLayout(Layout layout) {
+		super.setLayout(layout);
+		formatCache.clear();
+	}
+
+	// SPILL FILE *******************************
+	// ******************************************
+
+	/**
+	 * Appends an evicted message to the spill file, if there is one, and
+	 * rolls over the file if necessary
+	 */
+	private void spill(LogEntry entry) {
+		if (spillFile == null)
+			return;
+		try {
+			if (spillWriter == null) {
+				spillWriter = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(spillFile, true), "UTF-8"));
+				spillFileSize = spillFile.length();
+			}
+			String msg = formatCache.remove(entry);
+			if (msg == null)
+				msg = getLayout().format(entry.toEvent());
+			spillWriter.write(msg);
+			spillWriter.write('\n');
+			spillFileSize += msg.length() + 1;
+			if (maxSpillFileSize > 0 && spillFileSize > maxSpillFileSize) {
+				closeSpillWriter();
+				File backup = new File(spillFile.getPath() + ".1");
+				backup.delete();
+				spillFile.renameTo(backup);
+			}
+		} catch (IOException e) {
+			errorHandler.error("Can't write to spill file " + spillFile, e,
+					ErrorCode.WRITE_FAILURE);
+		}
+	}
+
+	/**
+	 * Flushes and closes the spill writer, if it is open
+	 */
+	private void closeSpillWriter() {
+		if (spillWriter == null)
+			return;
+		try {
+			spillWriter.close();
+		} catch (IOException e) {
+			errorHandler.error("Can't close spill file " + spillFile, e,
+					ErrorCode.CLOSE_FAILURE);
+		}
+		spillWriter = null;
+	}
+
 	// ABSTRACT APPENDER METHODS ****************
 	// ******************************************
 
@@ -112,16 +500,20 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 	 */
 	@Override
 	protected void append(LoggingEvent arg0) {
-		String msg = getLayout().format(arg0);
-		loghistory.add(new LevelAnnotatedMessage(msg, arg0.getLevel()));
-		notifyMessageAppended(msg);
+		LogEntry entry = new LogEntry(arg0);
+		add(entry);
+		// Messages that are filtered don't change the history. Messages are
+		// only formatted when they are displayed (see getLogHistory)
+		if (hasLogHistoryListeners() && isLevelDisplayed(entry.level))
+			notifyMessageAppended(arg0);
 	}
 
 	/**
-	 * Closes the appender
+	 * Closes the appender and the spill file. The history is kept.
 	 */
-	public void close() {
+	public synchronized void close() {
 		closed = true;
+		closeSpillWriter();
 	}
 
 	/**
@@ -131,6 +523,82 @@ public class DefaultLogHistoryWindowModel extends AbstractLogHistoryModel {
 		return false;
 	}
 
+	/**
+	 * A growable ring buffer of long values, which supports appending at the
+	 * end, removing from the front and random access
+	 */
+	private static class LongRing {
+		private long[] values;
+		private int first = 0;
+		private int size = 0;
+
+		LongRing(int capacity) {
+			values = new long[capacity];
+		}
+
+		int size() {
+			return size;
+		}
+
+		long get(int i) {
+			return values[(first + i) % values.length];
+		}
+
+		long getFirst() {
+			return values[first];
+		}
+
+		void addLast(long value) {
+			if (size == values.length) {
+				long[] newvalues = new long[2 * values.length];
+				for (int i = 0; i < size; i++) {
+					newvalues[i] = get(i);
+				}
+				values = newvalues;
+				first = 0;
+			}
+			values[(first + size) % values.length] = value;
+			size++;
+		}
+
+		void removeFirst() {
+			first = (first + 1) % values.length;
+			size--;
+		}
+	}
+
+	/**
+	 * The raw data of a logging event needed for formatting it later. Entries
+	 * are compared by identity
+	 */
+	private static class LogEntry {
+		final Category logger;
+		final long timeStamp;
+		final Level level;
+		final String message;
+		final String threadName;
+		final ThrowableInformation throwable;
+
+		LogEntry(LoggingEvent event) {
+			logger = event.getLogger();
+			timeStamp = event.getTimeStamp();
+			level = event.getLevel();
+			message = event.getRenderedMessage() != null ? event
+					.getRenderedMessage() : "";
+			threadName = event.getThreadName();
+			throwable = event.getThrowableInformation();
+		}
+
+		/**
+		 * Recreates a logging event from the stored data
+		 */
+		LoggingEvent toEvent() {
+			return new LoggingEvent(Logger.class.getName(), logger, timeStamp,
+					level, message, threadName, throwable, null,
+					LocationInfo.NA_LOCATION_INFO, null);
+		}
+	}
+
 	private class DefaultHTMLLayout extends Layout {
 
 		/**
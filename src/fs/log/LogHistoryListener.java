@@ -1,6 +1,7 @@
 package fs.log;
 
 import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
 
 /**
  * This interface defines a listener which listens for changes in a
@@ -11,10 +12,12 @@ import org.apache.log4j.Level;
  */
 public interface LogHistoryListener {
 	/**
-	 * Indicates that a message has been appended to the history. The actual
-	 * message is passed as argument
+	 * Indicates that a message has been appended to the history. The appended
+	 * event is passed as argument. It is not formatted, since messages may be
+	 * appended in large numbers; the formatted message can be obtained from
+	 * the model, if needed
 	 */
-	public void messageAppended(String formattedMessage);
+	public void messageAppended(LoggingEvent event);
 
 	/**
 	 * Indicates that a filter criterion has been added/changed. The level for
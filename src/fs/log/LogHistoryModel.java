@@ -22,6 +22,19 @@ public interface LogHistoryModel extends Appender {
 	 */
 	public ArrayList<String> getLogHistory();
 
+	/**
+	 * @return The number of messages in the list returned by getLogHistory(),
+	 *         i.e. the number of stored messages which pass the filter.
+	 */
+	public int getLogHistorySize();
+
+	/**
+	 * Returns a page of the list returned by getLogHistory(): At most
+	 * maxCount messages, starting with the message at position fromIndex. If
+	 * fromIndex is larger than the number of messages, the list is empty.
+	 */
+	public ArrayList<String> getLogHistory(int fromIndex, int maxCount);
+
 	/**
 	 * Indicates whether messages of a certain level will be contained in the
 	 * list returned by getLogHistory()
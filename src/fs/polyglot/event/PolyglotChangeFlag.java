@@ -1,5 +1,7 @@
 package fs.polyglot.event;
 
+import java.util.List;
+
 import fs.event.DocumentChangeFlag;
 import fs.polyglot.model.PolyglotTableModel;
 
@@ -21,6 +23,12 @@ public class PolyglotChangeFlag extends DocumentChangeFlag implements PolyglotTa
 		setChangeFlag(true);
 	}
 
+	@Override
+	public void stringsChanged(PolyglotTableModel source,
+			List<StringTableChange> changes) {
+		setChangeFlag(true);
+	}
+
 	@Override
 	public void tableDescriptionChanged(PolyglotTableModel source) {
 		setChangeFlag(true);
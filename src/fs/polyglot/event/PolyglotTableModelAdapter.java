@@ -1,5 +1,7 @@
 package fs.polyglot.event;
 
+import java.util.List;
+
 import fs.polyglot.model.PolyglotTableModel;
 
 /**
@@ -19,6 +21,11 @@ public class PolyglotTableModelAdapter implements PolyglotTableModelListener {
 	public void stringTableChanged(PolyglotTableModel source) {
 	}
 
+	@Override
+	public void stringsChanged(PolyglotTableModel source,
+			List<StringTableChange> changes) {
+	}
+
 	@Override
 	public void tableDescriptionChanged(PolyglotTableModel source) {
 	}
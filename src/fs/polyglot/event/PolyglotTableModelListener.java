@@ -1,12 +1,13 @@
 package fs.polyglot.event;
 
 import java.util.EventListener;
+import java.util.List;
 
 import fs.polyglot.model.PolyglotTableModel;
 
 /**
- * Listens to all possible changes in a PolyglotTableModel. This is very coarse-grained, since it would be a serious performance impact to calculate 
- * the exact changes
+ * Listens to all possible changes in a PolyglotTableModel. Changes of single strings are reported in detail via stringsChanged, all other changes
+ * are coarse-grained, since it would be a serious performance impact to calculate the exact changes
  */
 public interface PolyglotTableModelListener extends EventListener {
 
@@ -31,5 +32,11 @@ public interface PolyglotTableModelListener extends EventListener {
 	 * string table that cannot be reflected by one of the other methods
 	 */
 	public void stringTableChanged(PolyglotTableModel source);
+
+	/**
+	 * This method is called when strings, variants or group associations have been changed. The list contains the changes
+	 * in the order in which they were made
+	 */
+	public void stringsChanged(PolyglotTableModel source, List<StringTableChange> changes);
 	
 }
@@ -0,0 +1,133 @@
+package fs.polyglot.event;
+
+/**
+ * Describes a single change of the string table of a PolyglotTableModel. Each
+ * change has a type and carries the ids needed to locate the affected
+ * polyglotstring before and after the change. Changes are immutable.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class StringTableChange {
+
+	/**
+	 * The different types of changes
+	 */
+	public enum Type {
+		/**
+		 * A string id has been added (without any variants)
+		 */
+		STRING_ADDED,
+		/**
+		 * A string id and all its variants have been removed
+		 */
+		STRING_REMOVED,
+		/**
+		 * A string id has been renamed to stringID. If stringID existed
+		 * before, a STRING_REMOVED change for it precedes this change
+		 */
+		STRING_RENAMED,
+		/**
+		 * A variant of a string has been inserted, changed or removed
+		 */
+		VARIANT_CHANGED,
+		/**
+		 * A string has been moved to another group
+		 */
+		GROUP_CHANGED
+	}
+
+	/**
+	 * The type of this change
+	 */
+	public final Type type;
+	/**
+	 * The id of the affected string (for renamings: its new id)
+	 */
+	public final String stringID;
+	/**
+	 * The id of a renamed string before the renaming, null for all other
+	 * changes
+	 */
+	public final String oldStringID;
+	/**
+	 * The language of a changed variant, null for all other changes
+	 */
+	public final String languageID;
+	/**
+	 * The group of the string before the change (null, if it had no group or
+	 * didn't exist)
+	 */
+	public final String oldGroupID;
+	/**
+	 * The group of the string after the change (null, if it has no group or
+	 * doesn't exist anymore)
+	 */
+	public final String groupID;
+
+	// CONSTRUCTORS *******************************************
+	// ********************************************************
+
+	private StringTableChange(Type type, String stringID, String oldStringID,
+			String languageID, String oldGroupID, String groupID) {
+		this.type = type;
+		this.stringID = stringID;
+		this.oldStringID = oldStringID;
+		this.languageID = languageID;
+		this.oldGroupID = oldGroupID;
+		this.groupID = groupID;
+	}
+
+	/**
+	 * The string id has been added without a group
+	 */
+	public static StringTableChange stringAdded(String stringID) {
+		return new StringTableChange(Type.STRING_ADDED, stringID, null, null,
+				null, null);
+	}
+
+	/**
+	 * The string id, which was in the specified group, has been removed
+	 */
+	public static StringTableChange stringRemoved(String stringID,
+			String oldGroupID) {
+		return new StringTableChange(Type.STRING_REMOVED, stringID, null,
+				null, oldGroupID, null);
+	}
+
+	/**
+	 * The string oldStringID in group oldGroupID has been renamed to stringID,
+	 * which is now in group groupID
+	 */
+	public static StringTableChange stringRenamed(String oldStringID,
+			String stringID, String oldGroupID, String groupID) {
+		return new StringTableChange(Type.STRING_RENAMED, stringID,
+				oldStringID, null, oldGroupID, groupID);
+	}
+
+	/**
+	 * The variant of the string in the specified language has been changed.
+	 * The string is in group groupID.
+	 */
+	public static StringTableChange variantChanged(String stringID,
+			String languageID, String groupID) {
+		return new StringTableChange(Type.VARIANT_CHANGED, stringID, null,
+				languageID, groupID, groupID);
+	}
+
+	/**
+	 * The string has been moved from oldGroupID to groupID
+	 */
+	public static StringTableChange groupChanged(String stringID,
+			String oldGroupID, String groupID) {
+		return new StringTableChange(Type.GROUP_CHANGED, stringID, null, null,
+				oldGroupID, groupID);
+	}
+
+	public String toString() {
+		return type + ": " + (oldStringID != null ? oldStringID + " -> " : "")
+				+ stringID + (languageID != null ? " (" + languageID + ")" : "")
+				+ ", group " + oldGroupID + " -> " + groupID;
+	}
+
+}
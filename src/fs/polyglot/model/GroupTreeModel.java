@@ -1,9 +1,12 @@
 package fs.polyglot.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.TreeSet;
 
 import javax.swing.event.TreeModelEvent;
@@ -12,17 +15,20 @@ import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 
 import fs.polyglot.event.PolyglotTableModelListener;
+import fs.polyglot.event.StringTableChange;
 import fs.xml.PolyglotStringTable;
 
 /**
  * This represents a GroupTree, which represents the group structure of a
  * PolyglotTableModel. It serves as a model for JTree and can be associated to a
  * PolyglotTableModel, the group structure of which it will represent and to
- * which it listens for changes. This model notifies potential
- * TreeModelListeners only of structureChanged events from root down, since it
- * would be far too complicated and slow to deduce specific changes from the
- * PolyglotTableModelListener events. On constructing this model, one can
- * specify, if strings and variants should also be included.
+ * which it listens for changes. Changes of single strings are applied to the
+ * tree locally: Only the nodes of the affected strings, their variants and
+ * their groups (up to the root) are updated. All other changes cause a
+ * complete resynchronization. In both cases, potential TreeModelListeners are
+ * notified of the exact nodes inserted, removed and changed. On constructing
+ * this model, one can specify, if strings and variants should also be
+ * included.
  * 
  * @author Simon Hampe
  * 
@@ -50,6 +56,11 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 	 */
 	private HashSet<TreeModelListener> listeners = new HashSet<TreeModelListener>();
 
+	/**
+	 * If more string changes than this are reported at once, the tree is resynchronized instead of patched
+	 */
+	private final static int maxPatchedChanges = 500;
+
 	//The actual data
 	private Group root = null; //The root node
 	private HashMap<TreeObject, ArrayList<TreeObject>> children = new HashMap<TreeObject, ArrayList<TreeObject>>(); //The tree data
@@ -64,11 +75,11 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 
 		@Override
 		public int compare(TreeObject o1, TreeObject o2) {
-			if (o1.path == null)
-				return -1;
-			if (o2.path == null)
-				return 1;
-			if(o1 != null && o2 != null) {
+			if (o1.path == null || o2.path == null) {
+				if (o1.path != o2.path)
+					return o1.path == null ? -1 : 1;
+			}
+			else {
 				int r1 = o1.path.compareTo(o2.path);
 				if (r1 != 0)
 					return r1;
@@ -172,40 +183,29 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 				ArrayList<TreeObject> removed = new ArrayList<TreeObject>(); ArrayList<Integer> remIndex = new ArrayList<Integer>();
 				ArrayList<TreeObject> inserted = new ArrayList<TreeObject>(); ArrayList<Integer> insIndex = new ArrayList<Integer>();
 				ArrayList<TreeObject> changed = new ArrayList<TreeObject>(); ArrayList<Integer> chaIndex = new ArrayList<Integer>();
+				//Both lists are sorted, so we use the loop indices and binary search instead of indexOf
+				ArrayList<TreeObject> oldlist = children.get(p);
+				ArrayList<TreeObject> newlist = newchildren.get(p);
 				//Calculate removed
-				for(TreeObject oc : children.get(p)) {
+				for(int i = 0; i < oldlist.size(); i++) {
+					TreeObject oc = oldlist.get(i);
 					if(!newchildren.containsKey(oc)) {
-						removed.add(oc); remIndex.add(children.get(p).indexOf(oc));
+						removed.add(oc); remIndex.add(i);
 					}
 				}
 				//Calculate added and changed
-				for(TreeObject nc : newchildren.get(p)) {
+				for(int i = 0; i < newlist.size(); i++) {
+					TreeObject nc = newlist.get(i);
+					int oldindex = children.containsKey(nc) ? Collections.binarySearch(oldlist, nc, treeObjectComparator) : -1;
 					//Inserted
-					if(!children.containsKey(nc)) {
-						inserted.add(nc); insIndex.add(newchildren.get(p).indexOf(nc));
+					if(oldindex < 0) {
+						inserted.add(nc); insIndex.add(i);
 					}
 					//Changed
 					else {
-						TreeObject older = children.get(p).get(children.get(p).indexOf(nc));
-						switch(nc.getType()) {
-						case VARIANT: 
-							if(!((Variant)nc).value.equals(((Variant)older).value)) {
-									changed.add(older); chaIndex.add(newchildren.get(p).indexOf(nc));
-									break;
-							} 
-							//We don't break, if the value is equal since we still have to check isComplete
-						case POLYGLOTSTRING: 
-							if(((PolyglotString)nc).isComplete != ((PolyglotString)older).isComplete) { 
-								changed.add(older);chaIndex.add(newchildren.get(p).indexOf(nc));
-							}
-							break;
-						case GROUP: 
-							if(((Group)nc).isComplete != ((Group)older).isComplete) {
-								changed.add(older); chaIndex.add(newchildren.get(p).indexOf(nc));
-							}
-							break;
-						default: //Will be considered changed 
-							changed.add(older);chaIndex.add(newchildren.get(p).indexOf(nc));
+						TreeObject older = oldlist.get(oldindex);
+						if(hasChanged(older, nc)) {
+							changed.add(nc); chaIndex.add(i);
 						}
 					}
 				}
@@ -252,6 +252,23 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 		}
 	}
 	
+	/**
+	 * Returns true, if the node nc differs from the equal node older in any displayed property
+	 */
+	protected boolean hasChanged(TreeObject older, TreeObject nc) {
+		switch(nc.getType()) {
+		case VARIANT: 
+			if(!((Variant)nc).value.equals(((Variant)older).value)) return true;
+			//We don't return, if the value is equal since we still have to check isComplete
+		case POLYGLOTSTRING: 
+			return ((PolyglotString)nc).isComplete != ((PolyglotString)older).isComplete;
+		case GROUP: 
+			return ((Group)nc).isComplete != ((Group)older).isComplete;
+		default: //Will be considered changed 
+			return true;
+		}
+	}
+
 	/**
 	 * Adds all children of o to the associated list newchildren.get(o) and calls itself for all children of 
 	 * o.
@@ -264,6 +281,165 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 	
 	
 
+	// PATCH METHODS ****************************************
+	// ******************************************************
+
+	/**
+	 * Applies the changes of the associated table to the tree. Only the nodes of the affected strings, their variants and their groups
+	 * (up to the root) are updated.
+	 */
+	protected void applyChanges(List<StringTableChange> changes) {
+		//The strings whose nodes have to be updated and the groups whose chains have to be updated
+		LinkedHashSet<String> strings = new LinkedHashSet<String>();
+		LinkedHashSet<String> groups = new LinkedHashSet<String>();
+		//First remove all nodes which don't exist anymore at their position
+		for(StringTableChange c : changes) {
+			switch(c.type) {
+			case STRING_REMOVED: removeStringNode(c.stringID, c.oldGroupID); break;
+			case STRING_RENAMED: removeStringNode(c.oldStringID, c.oldGroupID); break;
+			case GROUP_CHANGED: removeStringNode(c.stringID, c.oldGroupID); break;
+			default: break;
+			}
+			if(c.type != StringTableChange.Type.STRING_REMOVED) strings.add(c.stringID);
+			groups.add(c.oldGroupID);
+			groups.add(c.groupID);
+		}
+		//Update groups. New group nodes are inserted with all their descendants
+		for(String g : groups) updateGroupChain(g);
+		//Update strings and variants
+		for(String sid : strings) {
+			if(!table.containsStringID(sid)) continue;
+			String g = table.getGroupID(sid);
+			PolyglotString s = new PolyglotString(g, sid, table.isCompleteString(sid));
+			if(includeStrings) updateChild(new Group(g, false), s, s);
+			if(includeVariants) syncChildren(s);
+		}
+	}
+	
+	/**
+	 * Removes the node of the string from the node of its former group (if strings are included)
+	 */
+	protected void removeStringNode(String stringID, String groupID) {
+		if(includeStrings) updateChild(new Group(groupID, false), new PolyglotString(groupID, stringID, false), null);
+	}
+	
+	/**
+	 * Updates the root node and the nodes of the group and all its parent groups: Their completeness is updated and they are inserted or removed,
+	 * if they became visible or invisible
+	 */
+	protected void updateGroupChain(String groupID) {
+		ArrayList<String> chain = new ArrayList<String>();
+		for(String g = groupID; g != null; g = PolyglotStringTable.getParentGroup(g)) chain.add(0, g);
+		for(String g : chain) {
+			Group parent = new Group(PolyglotStringTable.getParentGroup(g), false);
+			//If the parent isn't visible, neither are its descendants
+			if(!children.containsKey(parent)) break;
+			boolean isComplete = table.isCompleteGroup(g);
+			boolean isVisible = table.containsGroup(g) && (!showOnlyIncomplete || !isComplete);
+			Group node = new Group(g, isComplete);
+			updateChild(parent, node, isVisible ? node : null);
+		}
+		//Update root
+		boolean isComplete = table.isCompleteGroup(null);
+		if(root.isComplete != isComplete) {
+			Group oldroot = root;
+			root = new Group(null, isComplete);
+			children.put(root, children.remove(oldroot));
+			fireTreeNodesChanged(new TreeModelEvent(this, new TreePath(root), null, null));
+		}
+	}
+	
+	/**
+	 * Makes sure that the children of the node parent contain node at its sorted position. If node == null, the child equal to key is removed 
+	 * (together with all its descendants). An existing child equal to node is replaced, if its state differs. A new child is inserted with all its 
+	 * descendants. If parent is not a node of this tree, this call is ignored. Listeners are notified of the change.
+	 */
+	protected void updateChild(TreeObject parent, TreeObject key, TreeObject node) {
+		ArrayList<TreeObject> list = children.get(parent);
+		if(list == null) return;
+		int index = Collections.binarySearch(list, key, treeObjectComparator);
+		if(node == null) {
+			if(index < 0) return;
+			TreeObject old = list.remove(index);
+			removeSubtree(old);
+			fireTreeNodesRemoved(new TreeModelEvent(this, getNodePath(parent), new int[]{index}, new Object[]{old}));
+		}
+		else if(index < 0) {
+			index = -index - 1;
+			list.add(index, node);
+			addChildrenRecursively(node, children);
+			fireTreeNodesInserted(new TreeModelEvent(this, getNodePath(parent), new int[]{index}, new Object[]{node}));
+		}
+		else {
+			TreeObject old = list.get(index);
+			if(!hasChanged(old, node)) return;
+			list.set(index, node);
+			//Replace the key as well
+			children.put(node, children.remove(old));
+			fireTreeNodesChanged(new TreeModelEvent(this, getNodePath(parent), new int[]{index}, new Object[]{node}));
+		}
+	}
+	
+	/**
+	 * Recomputes the children of the node (which should be a leaf group or a string) and notifies listeners of all removed, inserted 
+	 * and changed children. Does nothing, if the node is not part of this tree.
+	 */
+	protected void syncChildren(TreeObject node) {
+		ArrayList<TreeObject> oldlist = children.get(node);
+		if(oldlist == null) return;
+		TreePath path = getNodePath(node);
+		ArrayList<TreeObject> newlist = getChildren(node);
+		//Removed
+		ArrayList<TreeObject> kept = new ArrayList<TreeObject>();
+		ArrayList<Integer> remIndex = new ArrayList<Integer>(); ArrayList<TreeObject> removed = new ArrayList<TreeObject>();
+		for(int i = 0; i < oldlist.size(); i++) {
+			TreeObject oc = oldlist.get(i);
+			if(Collections.binarySearch(newlist, oc, treeObjectComparator) < 0) {
+				remIndex.add(i); removed.add(oc); removeSubtree(oc);
+			}
+			else kept.add(oc);
+		}
+		if(removed.size() > 0) {
+			children.put(node, kept);
+			fireTreeNodesRemoved(new TreeModelEvent(this, path, toIntArray(remIndex), removed.toArray()));
+		}
+		//Inserted and changed
+		ArrayList<Integer> insIndex = new ArrayList<Integer>(); ArrayList<TreeObject> inserted = new ArrayList<TreeObject>();
+		ArrayList<Integer> chaIndex = new ArrayList<Integer>(); ArrayList<TreeObject> changed = new ArrayList<TreeObject>();
+		for(int i = 0; i < newlist.size(); i++) {
+			TreeObject nc = newlist.get(i);
+			int oldindex = Collections.binarySearch(kept, nc, treeObjectComparator);
+			if(oldindex < 0) {
+				insIndex.add(i); inserted.add(nc); addChildrenRecursively(nc, children);
+			}
+			else {
+				TreeObject older = kept.get(oldindex);
+				if(hasChanged(older, nc)) {
+					chaIndex.add(i); changed.add(nc);
+				}
+				//Keep the descendants of the old node
+				children.put(nc, children.remove(older));
+			}
+		}
+		children.put(node, newlist);
+		if(inserted.size() > 0) fireTreeNodesInserted(new TreeModelEvent(this, path, toIntArray(insIndex), inserted.toArray()));
+		if(changed.size() > 0) fireTreeNodesChanged(new TreeModelEvent(this, path, toIntArray(chaIndex), changed.toArray()));
+	}
+	
+	/**
+	 * Removes the descendants of the node from the tree data
+	 */
+	protected void removeSubtree(TreeObject node) {
+		ArrayList<TreeObject> list = children.remove(node);
+		if(list != null) for(TreeObject c : list) removeSubtree(c);
+	}
+	
+	private static int[] toIntArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++) array[i] = list.get(i);
+		return array;
+	}
+
 	// HELPER METHODS ***************************************
 	// ******************************************************
 
@@ -335,16 +511,10 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 				treeObjectComparator);
 		// If it's a group, add subgroups and possibly strings
 		if (obj.getType() == TreeObject.NodeType.GROUP) {
-			for (String gid : table.getGroupList()) {
-				if (PolyglotStringTable.isSubgroupOf(obj.path, gid, true)) {
-					String cid = PolyglotStringTable
-							.extractGroup(obj.path, gid);
-					// This creates no doublets, since the treeObjectComparator
-					// recognizes identical paths:
-					boolean isComplete = table.isCompleteGroup(cid);
-					if(!showOnlyIncomplete || !isComplete) 
-						children.add(new Group(cid, isComplete));
-				}
+			for (String cid : table.getSubgroups(obj.path)) {
+				boolean isComplete = table.isCompleteGroup(cid);
+				if(!showOnlyIncomplete || !isComplete) 
+					children.add(new Group(cid, isComplete));
 			}
 			if (includeStrings) {
 				for (String sid : table.getStringsInGroup(obj.path)) {
@@ -370,6 +540,45 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 		return new ArrayList<TreeObject>(children);
 	}
 	
+	/**
+	 * Returns the tree path to the node of this tree equal to the specified node (or null, if there is no such node). The path is 
+	 * determined by the group hierarchy. It consists of the actual node objects of this tree.
+	 */
+	protected TreePath getNodePath(TreeObject node) {
+		ArrayList<TreeObject> path = new ArrayList<TreeObject>();
+		path.add(root);
+		//Collect the groups from the top
+		ArrayList<String> chain = new ArrayList<String>();
+		for(String g = node.path; g != null; g = PolyglotStringTable.getParentGroup(g)) chain.add(0, g);
+		TreeObject current = root;
+		for(String g : chain) {
+			current = findChild(current, new Group(g, false));
+			if(current == null) return null;
+			path.add(current);
+		}
+		if(node.getType() == TreeObject.NodeType.POLYGLOTSTRING || node.getType() == TreeObject.NodeType.VARIANT) {
+			current = findChild(current, new PolyglotString(node.path, ((PolyglotString)node).stringID, false));
+			if(current == null) return null;
+			path.add(current);
+		}
+		if(node.getType() == TreeObject.NodeType.VARIANT) {
+			current = findChild(current, node);
+			if(current == null) return null;
+			path.add(current);
+		}
+		return new TreePath(path.toArray());
+	}
+	
+	/**
+	 * Returns the child of parent which is equal to key or null, if there is none
+	 */
+	protected TreeObject findChild(TreeObject parent, TreeObject key) {
+		ArrayList<TreeObject> list = children.get(parent);
+		if(list == null) return null;
+		int index = Collections.binarySearch(list, key, treeObjectComparator);
+		return index < 0 ? null : list.get(index);
+	}
+
 	/**
 	 * Returns the tree path to the specified node (or null, if the node is
 	 * not part of this tree) according to the given parent map
@@ -493,12 +702,11 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 	}
 	
 	/**
-	 * Notifies, if variants are included
+	 * Notifies always, since the completeness of all nodes may have changed
 	 */
 	@Override
 	public void languageListChanged(PolyglotTableModel source) {
-		if (includeVariants)
-			syncData();
+		syncData();
 	}
 
 	/**
@@ -509,6 +717,18 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 		syncData();
 	}
 
+	/**
+	 * Applies the changes locally. Large batches of changes cause a resynchronization.
+	 */
+	@Override
+	public void stringsChanged(PolyglotTableModel source,
+			List<StringTableChange> changes) {
+		if (changes.size() > maxPatchedChanges)
+			syncData();
+		else
+			applyChanges(changes);
+	}
+
 	/**
 	 * Ignored
 	 */
@@ -518,11 +738,11 @@ public class GroupTreeModel implements TreeModel, PolyglotTableModelListener {
 	}
 
 	/**
-	 * Ignored
+	 * Notifies of a change of the root node, which displays the table id
 	 */
 	@Override
 	public void tableIDChanged(PolyglotTableModel source) {
-		syncData();
+		fireTreeNodesChanged(new TreeModelEvent(this, new TreePath(root), null, null));
 	}
 
 }
@@ -2,11 +2,13 @@ package fs.polyglot.model;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.TreeSet;
 
 import javax.swing.AbstractListModel;
 
 import fs.polyglot.event.PolyglotTableModelListener;
+import fs.polyglot.event.StringTableChange;
 
 /**
  * Implements the data model for the language list view. Languages are saved as
@@ -148,6 +150,20 @@ public class LanguageListModel extends AbstractListModel implements
 		syncToTable();
 	}
 
+	/**
+	 * Synchronizes, unless only group associations have changed
+	 */
+	@Override
+	public void stringsChanged(PolyglotTableModel source,
+			List<StringTableChange> changes) {
+		for (StringTableChange c : changes) {
+			if (c.type != StringTableChange.Type.GROUP_CHANGED) {
+				syncToTable();
+				return;
+			}
+		}
+	}
+
 	@Override
 	public void tableDescriptionChanged(PolyglotTableModel source) {
 		// Ignored
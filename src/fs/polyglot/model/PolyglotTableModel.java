@@ -1,21 +1,30 @@
 package fs.polyglot.model;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+
+import javax.swing.undo.UndoManager;
 
 import org.dom4j.Document;
 import org.dom4j.Node;
 
 import fs.polyglot.event.PolyglotTableModelListener;
+import fs.polyglot.event.StringTableChange;
 import fs.xml.PolyglotStringTable;
 import fs.xml.ResourceReference;
 import fs.xml.XMLWriteConfigurationException;
 
 /**
  * An extension of PolyglotStringTable which notifies registered change
- * listeners of all write method calls. For performance reasons the objects passed to listeners do not represent the full status of the table.
- * For example, a polyglotstring object obtained with a call of stringInserted always has an isComplete - attribute of false, since it would mean 
- * too much effort to collect this information each time a string is added. Any listener wishing to obtain this information has to do this by itself. 
- * The information passed on in listener calls is purely structural.
+ * listeners of all write method calls. Changes of single strings (adding, removing, renaming, changing a variant or a group) are reported as
+ * StringTableChanges via stringsChanged, whereas a configuration is reported as a change of everything. Write calls that don't change anything are
+ * not reported. The information passed on in listener calls is purely structural: Any listener wishing to obtain further information,
+ * e.g. whether a string is complete, has to query the table by itself.<br>
+ * Several changes can be combined into a batch by calling beginBatch() before and commitBatch() after them. Listeners are then notified
+ * only once, when the batch is committed: All string changes are passed on in one list and every other kind of notification is made at most once.
+ * If the batch contained a heavy structural change (e.g. a configuration), only stringTableChanged is called instead of stringsChanged.
  * 
  * @author Simon Hampe
  * 
@@ -27,6 +36,20 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	private HashSet<PolyglotTableModelListener> listeners = new HashSet<PolyglotTableModelListener>();
 
+	// The number of open batches. Notifications are only collected while this is > 0
+	private int batchDepth = 0;
+
+	// The notifications collected in the current batch
+	private boolean pendingTableIDChange = false;
+	private boolean pendingDescriptionChange = false;
+	private boolean pendingLanguageListChange = false;
+	private boolean pendingStringTableChange = false;
+	private ArrayList<StringTableChange> pendingChanges = new ArrayList<StringTableChange>();
+
+	// The undo manager of this table. It is kept here, so that it can be
+	// collected together with the table
+	private UndoManager undoManager = null;
+
 	// CONSTRUCTORS *******************************************
 	// ********************************************************
 
@@ -39,6 +62,31 @@ public class PolyglotTableModel extends PolyglotStringTable {
 		super(doc, r);
 	}
 
+	public PolyglotTableModel(InputStream in, ResourceReference r)
+			throws XMLWriteConfigurationException {
+		super(in, r);
+	}
+
+	// UNDO MANAGER *******************************************
+	// ********************************************************
+
+	/**
+	 * @return The undo manager associated to this table or null, if there is
+	 *         none. Use fs.polyglot.undo.TableUndoManager.getUndoManager(..)
+	 *         to obtain a manager.
+	 */
+	public UndoManager getUndoManager() {
+		return undoManager;
+	}
+
+	/**
+	 * Associates an undo manager to this table. This is called by
+	 * fs.polyglot.undo.TableUndoManager.
+	 */
+	public void setUndoManager(UndoManager undoManager) {
+		this.undoManager = undoManager;
+	}
+
 	// NOTIFY METHODS *****************************************
 	// ********************************************************
 
@@ -56,6 +104,54 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	public void removeListener(PolyglotTableModelListener l) {
 		listeners.remove(l);
 	}
+
+	// BATCH METHODS ******************************************
+	// ********************************************************
+
+	/**
+	 * Starts a batch: Until the matching call of commitBatch(), listeners are not notified of any changes. Batches may be nested, in
+	 * which case only the outermost batch notifies listeners. Callers should call commitBatch() in a finally block.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * Ends a batch. If this was the outermost batch, listeners are notified of all changes made during the batch. If no batch has been begun,
+	 * this call is ignored
+	 */
+	public void commitBatch() {
+		if (batchDepth == 0)
+			return;
+		batchDepth--;
+		if (batchDepth > 0)
+			return;
+		ArrayList<StringTableChange> changes = pendingChanges;
+		pendingChanges = new ArrayList<StringTableChange>();
+		boolean tableIDChange = pendingTableIDChange;
+		boolean descriptionChange = pendingDescriptionChange;
+		boolean languageListChange = pendingLanguageListChange;
+		boolean stringTableChange = pendingStringTableChange;
+		pendingTableIDChange = pendingDescriptionChange = pendingLanguageListChange = pendingStringTableChange = false;
+		if (tableIDChange)
+			fireTableIDChanged(this);
+		if (descriptionChange)
+			fireTableDescriptionChanged(this);
+		if (languageListChange)
+			fireLanguageListChanged(this);
+		// A structural change includes all string changes
+		if (stringTableChange)
+			fireStringTableChanged(this);
+		else if (changes.size() > 0)
+			fireStringsChanged(this, changes);
+	}
+
+	/**
+	 * @return Whether a batch is currently open
+	 */
+	public boolean isInBatch() {
+		return batchDepth > 0;
+	}
 	// OVERWRITTEN WRITE METHODS ******************************
 	// ********************************************************
 
@@ -66,8 +162,10 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void addStringID(String stringID) {
+		boolean existed = containsStringID(stringID);
 		super.addStringID(stringID);
-		fireStringTableChanged(this);
+		if (!existed)
+			fireStringsChanged(this, StringTableChange.stringAdded(stringID));
 	}
 
 	/*
@@ -77,37 +175,48 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void configure(Node n) throws XMLWriteConfigurationException {
-		super.configure(n);
-		// All properties may have been changed,
-		fireTableDescriptionChanged(this);
-		fireTableIDChanged(this);
-		fireLanguageListChanged(this);
-		fireStringTableChanged(this);
+		beginBatch();
+		try {
+			super.configure(n);
+			// All properties may have been changed,
+			fireTableDescriptionChanged(this);
+			fireTableIDChanged(this);
+			fireLanguageListChanged(this);
+			fireStringTableChanged(this);
+		} finally {
+			commitBatch();
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see fs.xml.PolyglotStringTable#putLanguage(java.lang.String,
-	 * java.lang.String)
+	 * @see fs.xml.PolyglotStringTable#configure(java.io.InputStream)
 	 */
 	@Override
-	public void putLanguage(String languageID, String description) {
-		super.putLanguage(languageID, description);
-		fireLanguageListChanged(this);
+	public void configure(InputStream in) throws XMLWriteConfigurationException {
+		beginBatch();
+		try {
+			super.configure(in);
+			fireTableDescriptionChanged(this);
+			fireTableIDChanged(this);
+			fireLanguageListChanged(this);
+			fireStringTableChanged(this);
+		} finally {
+			commitBatch();
+		}
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see fs.xml.PolyglotStringTable#putString(java.lang.String,
-	 * java.lang.String, java.lang.String, java.lang.String)
+	 * @see fs.xml.PolyglotStringTable#putLanguage(java.lang.String,
+	 * java.lang.String)
 	 */
 	@Override
-	public void putString(String stringID, String languageID, String groupID,
-			String value) {
-		super.putString(stringID, languageID, groupID, value);
-		fireStringTableChanged(this);
+	public void putLanguage(String languageID, String description) {
+		super.putLanguage(languageID, description);
+		fireLanguageListChanged(this);
 	}
 
 	/*
@@ -118,8 +227,19 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void putString(String stringID, String languageID, String value) {
+		if (stringID == null || languageID == null)
+			return;
+		boolean existed = containsStringID(stringID);
+		String oldValue = getUnformattedString(stringID, languageID);
 		super.putString(stringID, languageID, value);
-		fireStringTableChanged(this);
+		ArrayList<StringTableChange> changes = new ArrayList<StringTableChange>();
+		if (!existed)
+			changes.add(StringTableChange.stringAdded(stringID));
+		if (oldValue == null ? value != null : !oldValue.equals(value))
+			changes.add(StringTableChange.variantChanged(stringID, languageID,
+					getGroupID(stringID)));
+		if (changes.size() > 0)
+			fireStringsChanged(this, changes);
 	}
 
 	/*
@@ -129,8 +249,12 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void removeID(String stringID) {
+		boolean existed = containsStringID(stringID);
+		String groupID = getGroupID(stringID);
 		super.removeID(stringID);
-		fireStringTableChanged(this);
+		if (existed)
+			fireStringsChanged(this, StringTableChange.stringRemoved(stringID,
+					groupID));
 	}
 
 	/*
@@ -152,8 +276,14 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void setGroupID(String stringID, String groupID) {
+		String oldGroupID = getGroupID(stringID);
 		super.setGroupID(stringID, groupID);
-		fireStringTableChanged(this);
+		String newGroupID = getGroupID(stringID);
+		if (containsStringID(stringID)
+				&& (oldGroupID == null ? newGroupID != null : !oldGroupID
+						.equals(newGroupID)))
+			fireStringsChanged(this, StringTableChange.groupChanged(stringID,
+					oldGroupID, newGroupID));
 	}
 
 	/*
@@ -197,29 +327,64 @@ public class PolyglotTableModel extends PolyglotStringTable {
 	 */
 	@Override
 	public void renameString(String oldID, String newID) {
+		if (oldID == null || newID == null || oldID.equals(newID)
+				|| !containsStringID(oldID)) {
+			super.renameString(oldID, newID);
+			return;
+		}
+		String oldGroupID = getGroupID(oldID);
+		boolean overwrite = containsStringID(newID);
+		String overwrittenGroupID = getGroupID(newID);
 		super.renameString(oldID, newID);
-		fireStringTableChanged(this);
+		ArrayList<StringTableChange> changes = new ArrayList<StringTableChange>();
+		if (overwrite)
+			changes.add(StringTableChange.stringRemoved(newID,
+					overwrittenGroupID));
+		changes.add(StringTableChange.stringRenamed(oldID, newID, oldGroupID,
+				getGroupID(newID)));
+		fireStringsChanged(this, changes);
 	}
 	
 	// LISTENER METHODS ******************************************
 	// ***********************************************************
 
+	// All fire methods only record the notification, while a batch is open
+
 	public void fireLanguageListChanged(PolyglotTableModel source) {
+		if(batchDepth > 0) { pendingLanguageListChange = true; return; }
 		if(listeners != null)
 		for(PolyglotTableModelListener l : listeners) l.languageListChanged(source);
 	}
 
 	public void fireStringTableChanged(PolyglotTableModel source) {
+		if(batchDepth > 0) { pendingStringTableChange = true; return; }
 		if(listeners != null)
 		for(PolyglotTableModelListener l : listeners) l.stringTableChanged(source);
 	}
 
+	public void fireStringsChanged(PolyglotTableModel source, List<StringTableChange> changes) {
+		if(batchDepth > 0) { pendingChanges.addAll(changes); return; }
+		if(listeners != null)
+		for(PolyglotTableModelListener l : listeners) l.stringsChanged(source, changes);
+	}
+
+	/**
+	 * Notifies all listeners of a single change
+	 */
+	private void fireStringsChanged(PolyglotTableModel source, StringTableChange change) {
+		ArrayList<StringTableChange> changes = new ArrayList<StringTableChange>();
+		changes.add(change);
+		fireStringsChanged(source, changes);
+	}
+
 	public void fireTableDescriptionChanged(PolyglotTableModel source) {
+		if(batchDepth > 0) { pendingDescriptionChange = true; return; }
 		if(listeners != null)
 		for(PolyglotTableModelListener l : listeners) l.tableDescriptionChanged(source);
 	}
 
 	public void fireTableIDChanged(PolyglotTableModel source) {
+		if(batchDepth > 0) { pendingTableIDChange = true; return; }
 		if(listeners != null)
 		for(PolyglotTableModelListener l : listeners) l.tableIDChanged(source);
 	}		
@@ -15,7 +15,13 @@ import fs.polyglot.model.PolyglotTableModel;
 /**
  * Creates undo managers for PolyglotTableModels. There is one single
  * UndoManager for each PolyglotTableModel, which is obtained by calling
- * getUndoManager().
+ * getUndoManager(). The manager is stored in the table itself, so a table and
+ * its history can be collected as soon as the table isn't used anymore. <br>
+ * The history is limited by the number of edits (see setLimit(int)) and by
+ * the estimated number of bytes the edits occupy (see setByteLimit(long)).
+ * Consecutive changes of the same variant are merged into one edit and all
+ * variant edits but the most recent ones are compacted (see
+ * UndoableVariantEdit.compact()).
  * 
  * @author Simon Hampe
  * 
@@ -27,10 +33,25 @@ public class TableUndoManager extends UndoManager {
 	 */
 	private static final long serialVersionUID = 8244740398815898726L;
 	/**
-	 * Mapping of tables to UndoManagers
+	 * The default byte limit. The current value is 4 MB
 	 */
-	private static HashMap<PolyglotTableModel, TableUndoManager> managerTable = new HashMap<PolyglotTableModel, TableUndoManager>();
-	
+	public final static long DEFAULT_BYTE_LIMIT = 4 * 1024 * 1024;
+
+	/**
+	 * The number of most recent edits which are not compacted
+	 */
+	private final static int uncompactedEdits = 10;
+
+	/**
+	 * The manager used for the null table
+	 */
+	private static TableUndoManager nullTableManager = null;
+
+	/**
+	 * The maximal estimated number of bytes occupied by all edits
+	 */
+	private long byteLimit = DEFAULT_BYTE_LIMIT;
+
 	private HashSet<UndoableEditListener> listeners = new HashSet<UndoableEditListener>();
 	
 	
@@ -44,21 +65,124 @@ public class TableUndoManager extends UndoManager {
 	 * @return Returns the UndoManager instance associated to the table (or
 	 *         creates one, if it doesn't exist yet).
 	 */
-	public static TableUndoManager getUndoManager(PolyglotTableModel table) {
-		TableUndoManager manager = managerTable.get(table);
+	public static synchronized TableUndoManager getUndoManager(PolyglotTableModel table) {
+		if (table == null) {
+			if (nullTableManager == null)
+				nullTableManager = new TableUndoManager();
+			return nullTableManager;
+		}
 		// If it doesn't exist, create it
-		if (manager == null) {
-			manager = new TableUndoManager();
-			managerTable.put(table, manager);
+		if (!(table.getUndoManager() instanceof TableUndoManager))
+			table.setUndoManager(new TableUndoManager());
+		return (TableUndoManager) table.getUndoManager();
+	}
+
+	// HISTORY LIMITS *******************************************************
+
+	/**
+	 * @return The maximal estimated number of bytes occupied by all edits (<=
+	 *         0 means unlimited)
+	 */
+	public synchronized long getByteLimit() {
+		return byteLimit;
+	}
+
+	/**
+	 * Sets the maximal estimated number of bytes occupied by all edits. If the
+	 * edits occupy more, the oldest edits are discarded (but the most recent
+	 * edit is always kept). A value <= 0 means unlimited.
+	 */
+	public synchronized void setByteLimit(long byteLimit) {
+		this.byteLimit = byteLimit;
+		trimForByteLimit();
+	}
+
+	/**
+	 * Discards the oldest edits until the edits occupy at most byteLimit
+	 * bytes. Edits which can be redone are discarded after all edits which
+	 * can be undone.
+	 */
+	protected void trimForByteLimit() {
+		if (byteLimit <= 0)
+			return;
+		long total = 0;
+		for (UndoableEdit e : edits) {
+			total += estimateSize(e);
+		}
+		if (total <= byteLimit)
+			return;
+		// First discard edits to redo, starting with the last one
+		int last = edits.size() - 1;
+		int nextAdd = lastDoneIndex() + 1;
+		while (total > byteLimit && last >= nextAdd && last > 0) {
+			total -= estimateSize(edits.get(last));
+			last--;
 		}
-		return manager;
+		if (last < edits.size() - 1)
+			trimEdits(last + 1, edits.size() - 1);
+		// Then the oldest edits
+		int first = 0;
+		while (total > byteLimit && first < edits.size() - 1) {
+			total -= estimateSize(edits.get(first));
+			first++;
+		}
+		if (first > 0)
+			trimEdits(0, first - 1);
 	}
 
-	
-	
+	/**
+	 * Compacts the edit, which has just become older than the
+	 * uncompactedEdits most recent edits
+	 */
+	private void compactOldEdits() {
+		int i = lastDoneIndex() - uncompactedEdits;
+		if (i >= 0 && edits.get(i) instanceof UndoableVariantEdit)
+			((UndoableVariantEdit) edits.get(i)).compact();
+	}
+
+	/**
+	 * @return The index of the edit which is undone next or -1, if there is
+	 *         none
+	 */
+	private int lastDoneIndex() {
+		UndoableEdit e = editToBeUndone();
+		return e == null ? -1 : edits.lastIndexOf(e);
+	}
+
+	/**
+	 * @return An estimate of the number of bytes occupied by the edit
+	 */
+	protected static long estimateSize(UndoableEdit edit) {
+		if (edit instanceof UndoableVariantEdit)
+			return ((UndoableVariantEdit) edit).getEstimatedSize();
+		if (edit instanceof UndoableCompoundEdit)
+			return ((UndoableCompoundEdit) edit).getEstimatedSize();
+		if (edit instanceof UndoablePolyglotStringEdit) {
+			long size = 128;
+			HashMap<String, String> variants = ((UndoablePolyglotStringEdit) edit).variants;
+			if (variants != null) {
+				for (String l : variants.keySet()) {
+					String v = variants.get(l);
+					size += 64 + 2 * (l.length() + (v == null ? 0 : v
+							.length()));
+				}
+			}
+			return size;
+		}
+		return 128;
+	}
+
+	// UNDOMANAGER METHODS **************************************************
+
+	/**
+	 * Adds the edit (or merges it with the last edit) and discards the oldest
+	 * edits, if the limits are exceeded
+	 */
 	@Override
 	public synchronized boolean addEdit(UndoableEdit anEdit) {
 		boolean r = super.addEdit(anEdit);
+		compactOldEdits();
+		trimForByteLimit();
 		fireUndoableEditHappened(new UndoableEditEvent(this,anEdit));
 		return r;
 	}
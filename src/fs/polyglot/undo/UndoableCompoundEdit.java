@@ -0,0 +1,135 @@
+package fs.polyglot.undo;
+
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+import fs.polyglot.model.PolyglotTableModel;
+import fs.xml.PolyglotStringLoader;
+import fs.xml.PolyglotStringTable;
+
+/**
+ * This class represents a sequence of edits on a table, which are undone and
+ * redone as one single step. All changes are applied in one batch of the table
+ * (see PolyglotTableModel.beginBatch()), so listeners are notified only once,
+ * no matter how many strings are affected. When the edit is ended, its edits
+ * are compacted and the internal list is trimmed. Usually an instance of this
+ * class should not be created directly but via an UndoableEditFactory
+ * instance.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class UndoableCompoundEdit extends CompoundEdit {
+
+	/**
+	 * Compiler-generated version id
+	 */
+	private static final long serialVersionUID = -4129838447370196532L;
+
+	// The table on which the edits are performed
+	PolyglotTableModel table;
+
+	// Resource
+	PolyglotStringLoader loader;
+	String languageID;
+
+	/**
+	 * Creates an empty compound edit
+	 *
+	 * @param table
+	 *            The table in which the edits are performed. If null, the
+	 *            edits are performed without batching
+	 * @param loader
+	 *            The string loader for loading representation names. If null,
+	 *            the default loader is used
+	 * @param languageID
+	 *            The language id for the representation names. If null, the
+	 *            global language id is used.
+	 */
+	public UndoableCompoundEdit(PolyglotTableModel table,
+			PolyglotStringLoader loader, String languageID) {
+		super();
+		this.table = table;
+		this.loader = loader != null ? loader : PolyglotStringLoader
+				.getDefaultLoader();
+		this.languageID = languageID != null ? languageID : PolyglotStringTable
+				.getGlobalLanguageID();
+	}
+
+	// GETTERS ******************************************************
+	// **************************************************************
+
+	/**
+	 * @return The number of edits contained in this edit
+	 */
+	public int getEditCount() {
+		return edits.size();
+	}
+
+	/**
+	 * @return An estimate of the number of bytes occupied by this edit and all
+	 *         its edits
+	 */
+	public long getEstimatedSize() {
+		long size = 64 + 8 * edits.size();
+		for (UndoableEdit e : edits) {
+			size += TableUndoManager.estimateSize(e);
+		}
+		return size;
+	}
+
+	// UNDOABLEEDIT METHODS *****************************************
+	// **************************************************************
+
+	/**
+	 * Ends this edit and compacts all contained variant edits
+	 */
+	@Override
+	public void end() {
+		super.end();
+		for (UndoableEdit e : edits) {
+			if (e instanceof UndoableVariantEdit)
+				((UndoableVariantEdit) e).compact();
+		}
+		edits.trimToSize();
+	}
+
+	/**
+	 * Redoes all edits in one batch of the table
+	 *
+	 * @throws CannotRedoException
+	 *             - If any of the edits cannot be redone
+	 */
+	@Override
+	public void redo() throws CannotRedoException {
+		if (table != null)
+			table.beginBatch();
+		try {
+			super.redo();
+		} finally {
+			if (table != null)
+				table.commitBatch();
+		}
+	}
+
+	/**
+	 * Undoes all edits in reverse order in one batch of the table
+	 *
+	 * @throws CannotUndoException
+	 *             - If any of the edits cannot be undone
+	 */
+	@Override
+	public void undo() throws CannotUndoException {
+		if (table != null)
+			table.beginBatch();
+		try {
+			super.undo();
+		} finally {
+			if (table != null)
+				table.commitBatch();
+		}
+	}
+
+}
@@ -1,6 +1,9 @@
 package fs.polyglot.undo;
 
+import java.util.List;
+
 import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
 import javax.swing.undo.UndoableEdit;
 
@@ -18,6 +21,8 @@ import fs.xml.PolyglotStringTable;
  * - UndoablePolyglotStringEdit <br>
  * - UndoableVariantEdit <br>
  * - UndoableTableEdit <br>
+ * - UndoableGroupEdit <br>
+ * - UndoableCompoundEdit <br>
  * A factory instance is created with a link to a table on which this edits
  * occur, a string loader and a language id, as well as an UndoManager for
  * receiving created edits. For each class, there are two methods for creating
@@ -154,4 +159,43 @@ public class UndoableEditFactory {
 		return edit;
 	}
 
+	public UndoableCompoundEdit createUndoableCompoundEdit() {
+		return new UndoableCompoundEdit(table, loader, languageID);
+	}
+
+	/**
+	 * Performs all edits (as redo) in the given order in one batch of the
+	 * table, so that listeners are notified only once, and posts them as one
+	 * compound edit. If one of the edits cannot be performed, all edits
+	 * performed before are undone and nothing is posted.
+	 */
+	public UndoableCompoundEdit performUndoableCompoundEdit(
+			List<? extends UndoableEdit> edits) throws CannotRedoException {
+		UndoableCompoundEdit edit = createUndoableCompoundEdit();
+		if (table != null)
+			table.beginBatch();
+		try {
+			for (UndoableEdit e : edits) {
+				try {
+					e.redo();
+				} catch (CannotRedoException ce) {
+					edit.end();
+					try {
+						edit.undo();
+					} catch (CannotUndoException ue) {
+						// Nothing left to do
+					}
+					throw ce;
+				}
+				edit.addEdit(e);
+			}
+		} finally {
+			if (table != null)
+				table.commitBatch();
+		}
+		edit.end();
+		postEdit(edit);
+		return edit;
+	}
+
 }
@@ -74,6 +74,12 @@ public class UndoableGroupEdit extends AbstractUndoableEdit {
 			//If newValue == null, replace oldValue + ".", otherwise oldValue
 			else groupsForRedo.add((gid != null ? gid : "").replaceFirst((oldValue == null ? "" : oldValue) + (newValue == null? "." : ""),newValue == null? "" : newValue + (oldValue == null? "." : "") ));
 		}
+		//Store the lists compactly: Without renaming, both id lists are equal
+		if(!renameIDs) idsToMoveBack = idsToMove;
+		idsToMove.trimToSize();
+		idsToMoveBack.trimToSize();
+		groupsForRedo.trimToSize();
+		groupsForUndo.trimToSize();
 	}
 
 	// GETTERS
@@ -161,12 +167,18 @@ public class UndoableGroupEdit extends AbstractUndoableEdit {
 	@Override
 	public void redo() throws CannotRedoException {
 		super.redo();
-		//Just move all registered strings to the new group, renaming them, if necessary
-		for(int i = 0; i < idsToMove.size(); i++) {
-			//Rename
-			if(renameIDs) table.renameString(idsToMove.get(i), idsToMoveBack.get(i));
-			//Move to group
-			table.setGroupID(idsToMoveBack.get(i), groupsForRedo.get(i));
+		//Just move all registered strings to the new group, renaming them, if necessary. Listeners are notified once
+		table.beginBatch();
+		try {
+			for(int i = 0; i < idsToMove.size(); i++) {
+				//Rename
+				if(renameIDs) table.renameString(idsToMove.get(i), idsToMoveBack.get(i));
+				//Move to group
+				table.setGroupID(idsToMoveBack.get(i), groupsForRedo.get(i));
+			}
+		}
+		finally {
+			table.commitBatch();
 		}
 	}
 
@@ -179,12 +191,18 @@ public class UndoableGroupEdit extends AbstractUndoableEdit {
 	@Override
 	public void undo() throws CannotUndoException {
 		super.undo();
-		//Just move all registered strings to the new group, renaming them, if necessary
-		for(int i = 0; i < idsToMoveBack.size(); i++) {
-			//Rename
-			if(renameIDs) table.renameString(idsToMoveBack.get(i), idsToMove.get(i));
-			//Move to group
-			table.setGroupID(idsToMove.get(i), groupsForUndo.get(i));
+		//Just move all registered strings to the new group, renaming them, if necessary. Listeners are notified once
+		table.beginBatch();
+		try {
+			for(int i = 0; i < idsToMoveBack.size(); i++) {
+				//Rename
+				if(renameIDs) table.renameString(idsToMoveBack.get(i), idsToMove.get(i));
+				//Move to group
+				table.setGroupID(idsToMove.get(i), groupsForUndo.get(i));
+			}
+		}
+		finally {
+			table.commitBatch();
 		}
 	}
 
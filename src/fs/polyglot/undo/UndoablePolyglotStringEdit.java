@@ -222,6 +222,18 @@ public class UndoablePolyglotStringEdit extends AbstractUndoableEdit {
 			throws UnsupportedOperationException {
 		if (table == null || (oldval == null && newval == null))
 			return;
+		// All steps of the edit are reported to listeners at once
+		table.beginBatch();
+		try {
+			performBatchedStringEdit(table, oldval, newval, variantstoadd);
+		} finally {
+			table.commitBatch();
+		}
+	}
+
+	private static void performBatchedStringEdit(PolyglotTableModel table,
+			PolyglotString oldval, PolyglotString newval, HashMap<String,String> variantstoadd)
+			throws UnsupportedOperationException {
 		// Addition
 		if (oldval == null) {
 			if (table.containsStringID(newval.stringID))
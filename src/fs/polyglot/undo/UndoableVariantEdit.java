@@ -3,7 +3,9 @@ package fs.polyglot.undo;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
 
+import fs.polyglot.model.Language;
 import fs.polyglot.model.PolyglotTableModel;
 import fs.polyglot.model.Variant;
 import fs.xml.PolyglotStringLoader;
@@ -11,7 +13,13 @@ import fs.xml.PolyglotStringTable;
 
 /**
  * This class represents a change to polyglotstring variant, i.e. an addition, a
- * removal or a change of value.
+ * removal or a change of value. <br>
+ * An edit absorbs a subsequent edit of the same variant, which is made within
+ * MERGE_INTERVAL milliseconds after the last change of this edit (see
+ * addEdit(..)), so that a quick sequence of changes of a cell is undone in one
+ * step. A value change
+ * can be compacted: The old value is then stored only as its difference to the
+ * new value.
  * 
  * @author Simon Hampe
  * 
@@ -22,10 +30,21 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	private static final long serialVersionUID = -1150137045757683628L;
 
-	// Change parameters
+	// Change parameters. If the edit has been compacted, oldValue is null and
+	// oldDelta describes the old value
 	Variant oldValue;
 	Variant newValue;
 	PolyglotTableModel table;
+	private Delta oldDelta = null;
+
+	/**
+	 * The maximal time in milliseconds between two changes of a variant, such
+	 * that they are merged into one edit. The current value is 1500.
+	 */
+	public final static long MERGE_INTERVAL = 1500;
+
+	// The time of the creation of this edit or of the last absorbed edit
+	private long lastChangeTime = System.currentTimeMillis();
 
 	// Resource
 	PolyglotStringLoader loader;
@@ -74,6 +93,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	@Override
 	public boolean canRedo() {
+		Variant oldValue = getOldValue();
 		if ((table == null) || (oldValue == null && newValue == null))
 			return true;
 		// Addition or removal
@@ -93,6 +113,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	@Override
 	public boolean canUndo() {
+		Variant oldValue = getOldValue();
 		if ((table == null) || (oldValue == null && newValue == null))
 			return true;
 		// Addition
@@ -109,7 +130,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	public String getStringEditPresentationName(Variant oldval, Variant newval) {
 		if (oldval == null && newval == null)
-			loader.getString("fs.polyglot.undo.variantgeneral", languageID,
+			return loader.getString("fs.polyglot.undo.variantgeneral", languageID,
 					"null", "null");
 		// Addition
 		if (oldval == null)
@@ -135,7 +156,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	@Override
 	public String getPresentationName() {
-		return getStringEditPresentationName(oldValue, newValue);
+		return getStringEditPresentationName(getOldValue(), newValue);
 	}
 
 	/**
@@ -143,7 +164,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	@Override
 	public String getRedoPresentationName() {
-		return getStringEditPresentationName(oldValue, newValue);
+		return getStringEditPresentationName(getOldValue(), newValue);
 	}
 
 	/**
@@ -151,7 +172,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	 */
 	@Override
 	public String getUndoPresentationName() {
-		return getStringEditPresentationName(newValue, oldValue);
+		return getStringEditPresentationName(newValue, getOldValue());
 	}
 
 	/**
@@ -164,7 +185,7 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	public void redo() throws CannotRedoException {
 		super.redo();
 		try {
-			performVariantEdit(table, oldValue, newValue);
+			performVariantEdit(table, getOldValue(), newValue);
 		} catch (UnsupportedOperationException ue) {
 			throw new CannotRedoException();
 		}
@@ -180,12 +201,130 @@ public class UndoableVariantEdit extends AbstractUndoableEdit {
 	public void undo() throws CannotUndoException {
 		super.undo();
 		try {
-			performVariantEdit(table, newValue, oldValue);
+			performVariantEdit(table, newValue, getOldValue());
 		} catch (UnsupportedOperationException ue) {
 			throw new CannotUndoException();
 		}
 	}
 
+	/**
+	 * Absorbs anEdit, if it is a variant edit on the same table, which
+	 * changes the variant this edit has produced, i.e. its old value is the
+	 * new value of this edit, and which has been created at most
+	 * MERGE_INTERVAL milliseconds after the last change of this edit. This
+	 * edit then represents both changes and anEdit dies. An addition is not
+	 * merged with a subsequent removal, since the result would be no change.
+	 * 
+	 * @return Whether anEdit has been absorbed
+	 */
+	@Override
+	public boolean addEdit(UndoableEdit anEdit) {
+		if (!(anEdit instanceof UndoableVariantEdit))
+			return false;
+		UndoableVariantEdit edit = (UndoableVariantEdit) anEdit;
+		Variant editOld = edit.getOldValue();
+		if (!super.canUndo() || table == null || edit.table != table
+				|| edit.lastChangeTime - lastChangeTime > MERGE_INTERVAL
+				|| (oldValue == null && oldDelta == null && edit.newValue == null)
+				|| newValue == null || editOld == null
+				|| !isSameCell(newValue, editOld)
+				|| !newValue.value.equals(editOld.value)
+				|| (edit.newValue != null && !isSameCell(newValue,
+						edit.newValue)))
+			return false;
+		// Decode first, since the delta refers to the current new value
+		oldValue = getOldValue();
+		oldDelta = null;
+		newValue = edit.newValue;
+		lastChangeTime = edit.lastChangeTime;
+		edit.die();
+		return true;
+	}
+
+	/**
+	 * If this edit is a value change, the old value is replaced by its
+	 * difference to the new value, if this saves memory.
+	 */
+	public void compact() {
+		if (oldValue == null || newValue == null
+				|| !isSameCell(oldValue, newValue))
+			return;
+		Delta d = new Delta(oldValue, newValue.value);
+		if (d.middle.length() < oldValue.value.length()) {
+			oldDelta = d;
+			oldValue = null;
+		}
+	}
+
+	/**
+	 * @return An estimate of the number of bytes occupied by this edit
+	 */
+	public long getEstimatedSize() {
+		long size = 64;
+		if (newValue != null)
+			size += 2 * newValue.value.length();
+		if (oldValue != null)
+			size += 2 * oldValue.value.length();
+		if (oldDelta != null)
+			size += 2 * oldDelta.middle.length();
+		return size;
+	}
+
+	/**
+	 * @return The old value (null for an addition)
+	 */
+	protected Variant getOldValue() {
+		return oldDelta != null ? oldDelta.decode(newValue.value) : oldValue;
+	}
+
+	/**
+	 * @return Whether both variants belong to the same string and language
+	 */
+	private static boolean isSameCell(Variant v, Variant w) {
+		return w != null && v.stringID.equals(w.stringID)
+				&& v.language.id.equals(w.language.id);
+	}
+
+	/**
+	 * Stores a variant by the difference of its value to a reference string:
+	 * The lengths of the common prefix and suffix and the part in between
+	 */
+	private static class Delta {
+		final String path;
+		final String stringID;
+		final Language language;
+		final int prefix;
+		final int suffix;
+		final String middle;
+
+		Delta(Variant v, String reference) {
+			path = v.path;
+			stringID = v.stringID;
+			language = v.language;
+			String value = v.value;
+			int max = Math.min(value.length(), reference.length());
+			int p = 0;
+			while (p < max && value.charAt(p) == reference.charAt(p))
+				p++;
+			int s = 0;
+			while (s < max - p
+					&& value.charAt(value.length() - 1 - s) == reference
+							.charAt(reference.length() - 1 - s))
+				s++;
+			prefix = p;
+			suffix = s;
+			// Copy the middle part, so that the old value can be collected
+			middle = new String(value.substring(p, value.length() - s)
+					.toCharArray());
+		}
+
+		Variant decode(String reference) {
+			return new Variant(path, stringID, language, reference.substring(
+					0, prefix)
+					+ middle + reference.substring(reference.length() - suffix));
+		}
+	}
+
 	/**
 	 * This method tries to perform the change on the specified table as
 	 * indicated by the old and new values
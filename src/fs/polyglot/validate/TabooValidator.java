@@ -13,14 +13,16 @@ import fs.validate.ValidationResult.Result;
 /**
  * This validator makes sure, a text fields content is not in a given list of
  * strings (this might be used to ensure uniqueness of ID's, etc...). It's also
- * possible to ensure that the content is not empty (after trimming)
+ * possible to ensure that the content is not empty (after trimming). The
+ * taboo list is stored in normalized (trimmed) form, so a validation takes
+ * constant time, regardless of the size of the list.
  * 
  * @author Simon Hampe
  * 
  */
 public class TabooValidator extends LabelIndicValidator<JTextComponent> {
 
-	// The list of prohibited strings
+	// The list of prohibited strings (trimmed)
 	private HashSet<String> tabooList = new HashSet<String>();
 	// Is empty correct?
 	private boolean canBeEmpty;
@@ -46,8 +48,7 @@ public class TabooValidator extends LabelIndicValidator<JTextComponent> {
 			ImageIcon incorrect, Collection<String> tabooList,
 			boolean canBeEmpty) {
 		super(correct, warning, incorrect);
-		if (tabooList != null)
-			this.tabooList.addAll(tabooList);
+		addNormalized(tabooList);
 		this.canBeEmpty = canBeEmpty;
 	}
 
@@ -57,11 +58,40 @@ public class TabooValidator extends LabelIndicValidator<JTextComponent> {
 	 */
 	public void setTabooList(Collection<String> tabooList) {
 		this.tabooList = new HashSet<String>();
-		if (tabooList != null)
-			this.tabooList.addAll(tabooList);
+		addNormalized(tabooList);
 		fireStateChanged(new ChangeEvent(this));
 	}
 
+	/**
+	 * Adds a single value to the list of incorrect values and notifies all
+	 * change listeners
+	 */
+	public void addTabooValue(String value) {
+		if (value != null && tabooList.add(value.trim()))
+			fireStateChanged(new ChangeEvent(this));
+	}
+
+	/**
+	 * Removes a single value from the list of incorrect values and notifies
+	 * all change listeners
+	 */
+	public void removeTabooValue(String value) {
+		if (value != null && tabooList.remove(value.trim()))
+			fireStateChanged(new ChangeEvent(this));
+	}
+
+	/**
+	 * Adds the trimmed values of the collection to the taboo list
+	 */
+	private void addNormalized(Collection<String> values) {
+		if (values == null)
+			return;
+		for (String taboo : values) {
+			if (taboo != null)
+				tabooList.add(taboo.trim());
+		}
+	}
+
 	/**
 	 * Sets whether the empty string is allowed as content and notifies all
 	 * change listeners if the new value is different.
@@ -101,15 +131,12 @@ public class TabooValidator extends LabelIndicValidator<JTextComponent> {
 	public Result validate(JTextComponent component) {
 		if (component == null)
 			return Result.INCORRECT;
+		String text = component.getText().trim();
 		// Empty text?
-		if (!canBeEmpty && component.getText().trim().equals(""))
+		if (!canBeEmpty && text.equals(""))
 			return Result.INCORRECT;
 		// TabooList
-		for (String taboo : tabooList) {
-			if (component.getText().trim().equals(taboo.trim()))
-				return Result.INCORRECT;
-		}
-		return Result.CORRECT;
+		return tabooList.contains(text) ? Result.INCORRECT : Result.CORRECT;
 	}
 
 }
@@ -83,6 +83,8 @@ public class GroupEditor extends FrameworkDialog implements ResourceDependent {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			if(e.getSource() == okButton) {
+				//Pending validations may not have been performed yet
+				if(summary.validate().getOverallResult() == Result.INCORRECT) return;
 				fireDataReady(getNewPath());
 			}
 			dispose();
@@ -91,6 +91,10 @@ public class LanguageEditor extends FrameworkDialog implements
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			// Pending validations may not have been performed yet
+			if (e.getSource() == okButton
+					&& summary.validate().getOverallResult() == Result.INCORRECT)
+				return;
 			if (e.getSource() == okButton)
 				fireDataReady(new Language(idText.getText(),
 						descText.getText(), false, 0));
@@ -235,6 +239,25 @@ public class LanguageEditor extends FrameworkDialog implements
 		summary.validate();
 	}
 
+	// TABOO LIST ***********************************************************
+	// **********************************************************************
+
+	/**
+	 * Adds an id to the list of ids which are not allowed and revalidates the input
+	 */
+	public void addTabooValue(String id) {
+		if (id != null && tabooList.add(id))
+			idValidator.addTabooValue(id);
+	}
+
+	/**
+	 * Removes an id from the list of ids which are not allowed and revalidates the input
+	 */
+	public void removeTabooValue(String id) {
+		if (tabooList.remove(id))
+			idValidator.removeTabooValue(id);
+	}
+
 	// UNDOABLEEDIT METHODS *************************************************
 	// **********************************************************************
 	
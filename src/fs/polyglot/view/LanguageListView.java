@@ -8,8 +8,11 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -28,6 +31,8 @@ import org.dom4j.Document;
 
 import fs.event.DataRetrievalListener;
 import fs.gui.GUIToolbox;
+import fs.polyglot.event.PolyglotTableModelAdapter;
+import fs.polyglot.event.PolyglotTableModelListener;
 import fs.polyglot.model.Language;
 import fs.polyglot.model.LanguageListModel;
 import fs.polyglot.model.PolyglotTableModel;
@@ -312,8 +317,36 @@ public class LanguageListView extends JPanel implements ResourceDependent {
 		if (l != null)
 			tabooList.remove(l.id);
 		// Create dialog
-		LanguageEditor editor = new LanguageEditor(tabooList, l, reference,
+		final LanguageEditor editor = new LanguageEditor(tabooList, l, reference,
 				loader, languageID);
+		// Keep the taboo list in sync with the table, while the editor is open
+		final String editedID = l != null ? l.id : null;
+		final HashSet<String> knownLanguages = new HashSet<String>(table.getLanguageList());
+		final PolyglotTableModelListener languageListener = new PolyglotTableModelAdapter() {
+			@Override
+			public void languageListChanged(PolyglotTableModel source) {
+				HashSet<String> current = source.getLanguageList();
+				for (String id : current) {
+					if (knownLanguages.add(id) && !id.equals(editedID))
+						editor.addTabooValue(id);
+				}
+				for (Iterator<String> it = knownLanguages.iterator(); it.hasNext();) {
+					String id = it.next();
+					if (!current.contains(id)) {
+						it.remove();
+						editor.removeTabooValue(id);
+					}
+				}
+			}
+		};
+		final PolyglotTableModel observedTable = table;
+		observedTable.addListener(languageListener);
+		editor.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				observedTable.removeListener(languageListener);
+			}
+		});
 		// If l is null, this is a language addition, but also if l!= null but
 		// not contained in the official table language list
 		// (in this case, an only-used language is added)
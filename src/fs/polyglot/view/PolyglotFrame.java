@@ -25,7 +25,6 @@ import javax.swing.event.ChangeListener;
 
 import org.apache.log4j.Logger;
 import org.dom4j.Document;
-import org.dom4j.DocumentException;
 import org.dom4j.tree.DefaultDocument;
 
 import fs.event.DataRetrievalListener;
@@ -37,7 +36,6 @@ import fs.xml.PolyglotStringTable;
 import fs.xml.ResourceDependent;
 import fs.xml.ResourceReference;
 import fs.xml.XMLDirectoryTree;
-import fs.xml.XMLReadConfigurationException;
 import fs.xml.XMLToolbox;
 
 /**
@@ -61,6 +59,8 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	private TableEditPane editPane;
 	//The associated file
 	private File associatedFile;
+	//The worker loading a table or null, if no table is being loaded
+	private PolyglotTableWorker loadWorker = null;
 	//The application options
 	private PolyglotOptions options;
 	//The configuration file
@@ -102,26 +102,35 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	private WindowListener closeListener = new WindowAdapter() {
 		@Override
 		public void windowClosing(WindowEvent e) {
+			//Exits as soon as all saves have finished
+			final Runnable exit = new Runnable() {
+				@Override
+				public void run() {
+					logger.info(loader.getString("fs.polyglot.log.closing", languageID));
+					try {
+						saveConfiguration();
+					} catch (IOException e1) {
+						//Ignored
+					}
+					System.exit(0);
+				}
+			};
 			if(editPane.hasBeenChanged()) {
 				int ans = openSaveConfirmDialog();
 				switch(ans) {
 				case JOptionPane.YES_OPTION: 
-					try {
-						saveTable();
-					} catch (IOException e1) {
-						//Abort
-						return;
-					} break;
+					//Abort, if saving fails
+					saveTable(new Runnable() {
+						@Override
+						public void run() {
+							PolyglotTableWorker.invokeWhenIdle(exit);
+						}
+					});
+					return;
 				case JOptionPane.CANCEL_OPTION: return;
 				}
 			}
-			logger.info(loader.getString("fs.polyglot.log.closing", languageID));
-			try {
-				saveConfiguration();
-			} catch (IOException e1) {
-				//Ignored
-			}
-			System.exit(0);
+			PolyglotTableWorker.invokeWhenIdle(exit);
 		}
 	};
 	
@@ -146,14 +155,18 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	private ActionListener newListener = new ActionListener() {
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			//A table which is still being loaded must not replace the new one
+			if(loadWorker != null) {
+				loadWorker.cancel(true);
+				loadWorker = null;
+				editPane.setEditable(true);
+			}
 			if(editPane.hasBeenChanged()) {
 				switch(openSaveConfirmDialog()) {
 				case JOptionPane.CANCEL_OPTION: return;
 				case JOptionPane.YES_OPTION: 
-					try {
-						saveTable();
-					} catch (IOException e1) { //Ignored
-					}
+					//The table is saved in the background
+					saveTable(null);
 				}
 			}
 			setTable(null);
@@ -163,30 +176,21 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	private ActionListener openListener = new ActionListener() {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			try {
-				openFile();
-			} catch (DocumentException e1) { //Ignored
-			}
+			openFile();
 		}
 	};
 	
 	private ActionListener saveListener = new ActionListener() {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			try {
-				saveTable();
-			} catch (IOException e1) { //Ignored
-			}
+			saveTable(null);
 		}
 	};
 	
 	private ActionListener saveAsListener = new ActionListener() {
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			try {
-				saveAs();
-			} catch (IOException e1) { //Ignored
-			}
+			saveAs(null);
 		}
 	};
 	
@@ -224,26 +228,24 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 		@Override
 		public void actionPerformed(ActionEvent e) {
 			//Retrieve file 
-			File fileToOpen = lastFiles.get(lastFilesOpened.indexOf(e.getSource()));
+			final File fileToOpen = lastFiles.get(lastFilesOpened.indexOf(e.getSource()));
 			//Ask if the user is sure, if the document has been modified
 			if(editPane.hasBeenChanged()) {
 				int ans = openSaveConfirmDialog();
 				switch(ans) {
 				case JOptionPane.CANCEL_OPTION: return;
 				case JOptionPane.YES_OPTION: 
-					try {
-						saveTable();
-					} catch (IOException ex) {
-						//Abort, if anything goes wrong
-						return;
-					}
+					//Abort, if anything goes wrong
+					saveTable(new Runnable() {
+						@Override
+						public void run() {
+							loadTable(fileToOpen, null);
+						}
+					});
+					return;
 				}
 			}
-			try {
-				loadTable(fileToOpen);
-			} catch (DocumentException e1) {				
-				//Ignored
-			}
+			loadTable(fileToOpen, null);
 		}
 	};
 	
@@ -272,15 +274,9 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 		
 		//Load table-------------------------------------------------
 		
-		try {
-			if(file != null) loadTable(file);
-			else setTable(null);
-		} catch (DocumentException e) {
-			//If it doesn't work, open an empty table
-			file = null;
-			setTable(null);
-		}
-		associatedFile = file;
+		//Start with an empty table, which is replaced as soon as the file has been loaded
+		setTable(null);
+		if(file != null) loadTable(file, null);
 		
 		//Init GUI --------------------------------------------------
 		
@@ -336,52 +332,102 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	// *********************************
 
 	/**
-	 * Opens a file chooser and tries to load the selected file
-	 * @throws DocumentException - If the selected file cannot be opened
+	 * Asks to save the current table, if necessary, then opens a file chooser and loads the selected file in the background
 	 */
-	protected void openFile() throws DocumentException {
+	protected void openFile() {
 		//Ask if the user is sure, if the document has been modified
 		if(editPane.hasBeenChanged()) {
 			int ans = openSaveConfirmDialog();
 			switch(ans) {
 			case JOptionPane.CANCEL_OPTION: return;
 			case JOptionPane.YES_OPTION: 
-				try {
-					saveTable();
-				} catch (IOException e) {
-					//Abort, if anything goes wrong
-					return;
-				}
+				//Abort, if anything goes wrong
+				saveTable(new Runnable() {
+					@Override
+					public void run() {
+						chooseFileToOpen();
+					}
+				});
+				return;
 			}
 		}
-		//Open dialog
+		chooseFileToOpen();
+	}
+	
+	/**
+	 * Opens a file chooser and loads the selected file in the background
+	 */
+	protected void chooseFileToOpen() {
 		JFileChooser chooser = new JFileChooser(".");
 		chooser.setFileFilter(XMLToolbox.xmlFilter);
 		int ret = chooser.showOpenDialog(this);
 		if(ret == JFileChooser.APPROVE_OPTION) {
-			loadTable(chooser.getSelectedFile());
-			pushFile(chooser.getSelectedFile());
+			final File f = chooser.getSelectedFile();
+			loadTable(f, new Runnable() {
+				@Override
+				public void run() {
+					pushFile(f);
+				}
+			});
 		}
 	}
 	
 	/**
-	 * Tries to load the table represented by the file f 
-	 * @throws DocumentException - If the document cannot be loaded
+	 * Starts loading the table represented by the file f in the background. The progress is displayed in the progress bar of the current table.
+	 * As soon as the table has been read completely, it replaces the current table and f becomes the associated file. Afterwards next is run 
+	 * (if it is not null). If the table cannot be loaded, an error message is displayed and the current table is kept. A load which is still running
+	 * is cancelled. The current table can't be edited while the table is loaded.
 	 */
-	protected void loadTable(File f) throws DocumentException{
-		try {
-			logger.info(loader.getString("fs.polyglot.log.loadingfile", languageID, f.getAbsolutePath()));
-			PolyglotTableModel newmodel = new PolyglotTableModel(XMLToolbox.loadXMLFile(f),resource);
-			associatedFile = f;
-			setTable(newmodel);
-			logger.info(loader.getString("fs.polyglot.log.loadedfile", languageID, f.getAbsolutePath()));
-		}
-		catch(Exception e) {
-			String msg = loader.getString("fs.error.openfilefailed", languageID, f!= null? f.getAbsolutePath() : "", e.getMessage());
-			logger.error(msg);
-			JOptionPane.showMessageDialog(this, msg, loader.getString("fs.global.error", languageID), JOptionPane.ERROR_MESSAGE);
-			throw new DocumentException(e);
+	protected void loadTable(final File f, final Runnable next) {
+		if(loadWorker != null) loadWorker.cancel(true);
+		logger.info(loader.getString("fs.polyglot.log.loadingfile", languageID, f.getAbsolutePath()));
+		final PolyglotTableWorker worker = PolyglotTableWorker.createLoader(f, resource);
+		final TableEditPane pane = editPane;
+		worker.addDataRetrievalListener(new DataRetrievalListener() {
+			@Override
+			public void dataReady(Object source, Object data) {
+				if(loadWorker == worker) loadWorker = null;
+				if(worker.isCancelled()) return;
+				pane.setEditable(true);
+				if(data == null) {
+					Exception e = worker.getError();
+					String msg = loader.getString("fs.error.openfilefailed", languageID, f.getAbsolutePath(), e != null ? e.getMessage() : "");
+					logger.error(msg);
+					JOptionPane.showMessageDialog(PolyglotFrame.this, msg, loader.getString("fs.global.error", languageID), JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				logger.info(loader.getString("fs.polyglot.log.loadedfile", languageID, f.getAbsolutePath()));
+				showLoadedTable(f, (PolyglotTableModel)data, next);
+			}
+		});
+		PolyglotProgressBarManager.showProgress(pane.getTable(), worker, false);
+		pane.setEditable(false);
+		loadWorker = worker;
+		worker.start();
+	}
+	
+	/**
+	 * Replaces the current table by the table m loaded from f and runs next afterwards (if it is not null). If the current table has
+	 * been changed nonetheless, the user is asked to save it first. If the user cancels, the loaded table is discarded.
+	 */
+	private void showLoadedTable(final File f, final PolyglotTableModel m, final Runnable next) {
+		final Runnable show = new Runnable() {
+			@Override
+			public void run() {
+				associatedFile = f;
+				setTable(m);
+				if(next != null) next.run();
+			}
+		};
+		if(editPane.hasBeenChanged()) {
+			switch(openSaveConfirmDialog()) {
+			case JOptionPane.CANCEL_OPTION: return;
+			case JOptionPane.YES_OPTION:
+				saveTable(show);
+				return;
+			}
 		}
+		show.run();
 	}
 	
 	/**
@@ -408,38 +454,43 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 	}
 	
 	/**
-	 * Saves the table under the associated file. If the file is null, a save as... 
-	 * dialog is opened
-	 * @throws IOException - If any I/O-errors occur
+	 * Saves the table under the associated file in the background. If the file is null, a save as... 
+	 * dialog is opened. The current state of the table is saved, so it may be edited while it is being saved. When the table has been saved, 
+	 * next is run (if it is not null). If saving fails, an error message is displayed and next is not run.
 	 */
-	protected void saveTable() throws IOException {
-		if(associatedFile == null)	saveAs();
+	protected void saveTable(final Runnable next) {
+		if(associatedFile == null)	saveAs(next);
 		else {
-			Document tableDoc = new DefaultDocument();
-			try {
-				logger.info(loader.getString("fs.polyglot.log.savingfile", languageID, associatedFile.getAbsolutePath()));
-				tableDoc.setRootElement(editPane.getTable().getConfiguration());
-				XMLToolbox.saveXML(tableDoc, associatedFile.getAbsolutePath());
-				editPane.setChangeFlag(false);
-				logger.info(loader.getString("fs.polyglot.log.savedfile", languageID, associatedFile.getAbsolutePath()));
-			} catch (XMLReadConfigurationException e) {
-				String msg = loader.getString("fs.polyglot.error.readconfig", languageID, e.getMessage());
-				JOptionPane.showMessageDialog(this, msg,loader.getString("fs.global.error", languageID),JOptionPane.ERROR_MESSAGE);
-				logger.error(msg);
-			} catch (IOException e) {
-				String msg = loader.getString("fs.error.savefailed", languageID, associatedFile.getAbsolutePath(),e.getMessage());
-				JOptionPane.showMessageDialog(this, msg,loader.getString("fs.global.error", languageID),JOptionPane.ERROR_MESSAGE);
-				logger.error(msg);
-			}
-			
+			final File f = associatedFile;
+			final TableEditPane pane = editPane;
+			logger.info(loader.getString("fs.polyglot.log.savingfile", languageID, f.getAbsolutePath()));
+			final PolyglotTableWorker worker = PolyglotTableWorker.createSaver(pane.getTable(), f);
+			//The state saved is the one from now on. Later edits will set the flag again
+			pane.setChangeFlag(false);
+			worker.addDataRetrievalListener(new DataRetrievalListener() {
+				@Override
+				public void dataReady(Object source, Object data) {
+					if(data == null) {
+						pane.setChangeFlag(true);
+						Exception e = worker.getError();
+						String msg = loader.getString("fs.error.savefailed", languageID, f.getAbsolutePath(), e != null ? e.getMessage() : "");
+						JOptionPane.showMessageDialog(PolyglotFrame.this, msg,loader.getString("fs.global.error", languageID),JOptionPane.ERROR_MESSAGE);
+						logger.error(msg);
+						return;
+					}
+					logger.info(loader.getString("fs.polyglot.log.savedfile", languageID, f.getAbsolutePath()));
+					if(next != null) next.run();
+				}
+			});
+			PolyglotProgressBarManager.showProgress(pane.getTable(), worker, true);
+			worker.start();
 		}
 	}
 	
 	/**
-	 * Opens a 'Save As...'- Dialog, sets the associatedFile and calls saveTable
-	 * @throws IOException - If any I/O-errors occur
+	 * Opens a 'Save As...'- Dialog, sets the associatedFile and calls saveTable(next). If the dialog is cancelled, next is not run.
 	 */
-	protected void saveAs() throws IOException {
+	protected void saveAs(Runnable next) {
 		JFileChooser chooser = new JFileChooser(associatedFile != null? associatedFile.getPath() : ".");
 		chooser.setFileFilter(XMLToolbox.xmlFilter);
 		int ans = chooser.showSaveDialog(this);
@@ -456,7 +507,7 @@ public class PolyglotFrame extends JFrame implements ResourceDependent {
 			}
 			//Now save
 			associatedFile = chooser.getSelectedFile();
-			saveTable();
+			saveTable(next);
 		}
 	}
 	
@@ -1,21 +1,25 @@
 package fs.polyglot.view;
 
-import java.util.HashMap;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
 
 import fs.xml.PolyglotStringTable;
 
 /**
  * This class manages a mapping of PolyglotStringTables to ProgressBars, so that there is a unique Progress Bar associated to each table. The progress bar
- * is created on demand.
+ * is created on demand. Tables are only weakly referenced, so a table and its progress bar can be garbage collected when the table is not used anymore.
  * @author Simon Hampe
  *
  */
 public class PolyglotProgressBarManager {
 
 	//The mapping
-	private static HashMap<PolyglotStringTable, JProgressBar> map = new HashMap<PolyglotStringTable, JProgressBar>();
+	private static Map<PolyglotStringTable, JProgressBar> map = new WeakHashMap<PolyglotStringTable, JProgressBar>();
 	
 	/**
 	 * @return The progress bar associated to the table. If there isn't one yet, it is created. If table == null, null is returned
@@ -31,4 +35,27 @@ public class PolyglotProgressBarManager {
 		}
 	}
 	
+	/**
+	 * Displays the progress of the worker in the progress bar associated to the table, until the worker is done. If indeterminate is true, the bar only
+	 * indicates that the worker is running. Otherwise it displays the value of the worker's progress property. When the worker is done, the bar is reset.
+	 * Should be called on the event dispatch thread.
+	 */
+	public static void showProgress(PolyglotStringTable table, SwingWorker<?, ?> worker, boolean indeterminate) {
+		final JProgressBar bar = getProgressBar(table);
+		if(bar == null || worker == null) return;
+		bar.setIndeterminate(indeterminate);
+		bar.setValue(0);
+		//Property changes are delivered on the event dispatch thread
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				if("progress".equals(evt.getPropertyName())) bar.setValue((Integer)evt.getNewValue());
+				if("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+					bar.setIndeterminate(false);
+					bar.setValue(0);
+				}
+			}
+		});
+	}
+	
 }
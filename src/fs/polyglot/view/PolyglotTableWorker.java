@@ -0,0 +1,214 @@
+package fs.polyglot.view;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import fs.event.DataRetrievalListener;
+import fs.polyglot.model.PolyglotTableModel;
+import fs.xml.PolyglotStringTable;
+import fs.xml.ResourceReference;
+
+/**
+ * Loads or saves a polyglot string table in the background, so that the event
+ * dispatch thread is never blocked by parsing, validating or writing a table.
+ * All workers are executed one after another by a single I/O thread, so a
+ * table is always read after all previously started saves have finished. <br>
+ * A loading worker reads, validates and builds a complete PolyglotTableModel
+ * and reports its progress (the percentage of the file read) as progress
+ * property. A saving worker writes a snapshot of the table taken when the
+ * worker is created, so the table may be edited while it is saved. <br>
+ * When the worker is finished, all registered DataRetrievalListeners are
+ * notified on the event dispatch thread: The data passed on is the loaded
+ * model or the saved file, respectively. If the operation failed (or was
+ * cancelled), the data is null and getError() returns the cause.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class PolyglotTableWorker extends SwingWorker<Object, Void> {
+
+	// The thread reading and writing tables
+	private final static ExecutorService ioExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "PolyglotTableWorker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final File file;
+	private final ResourceReference resource;
+	// The snapshot to save or null, if this worker loads a table
+	private final PolyglotStringTable snapshot;
+
+	private Exception error = null;
+
+	private HashSet<DataRetrievalListener> listeners = new HashSet<DataRetrievalListener>();
+
+	// CONSTRUCTORS *******************************************
+	// ********************************************************
+
+	private PolyglotTableWorker(File file, ResourceReference r,
+			PolyglotStringTable snapshot) {
+		this.file = file;
+		this.resource = r;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Creates a worker, which loads a PolyglotTableModel from the file, using
+	 * the resource reference r (if null, the default reference is used)
+	 */
+	public static PolyglotTableWorker createLoader(File f, ResourceReference r) {
+		return new PolyglotTableWorker(f, r, null);
+	}
+
+	/**
+	 * Creates a worker, which saves the current content of the table to the
+	 * file. Later changes of the table are not saved.
+	 */
+	public static PolyglotTableWorker createSaver(PolyglotStringTable table,
+			File f) {
+		return new PolyglotTableWorker(f, null, table.clone());
+	}
+
+	// CONTROL METHODS ****************************************
+	// ********************************************************
+
+	/**
+	 * Schedules this worker for execution on the I/O thread. Use this instead
+	 * of execute().
+	 */
+	public void start() {
+		ioExecutor.execute(this);
+	}
+
+	/**
+	 * Runs r on the event dispatch thread as soon as all workers started
+	 * before have finished (including the notification of their listeners)
+	 */
+	public static void invokeWhenIdle(final Runnable r) {
+		ioExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(r);
+			}
+		});
+	}
+
+	/**
+	 * @return Whether this worker loads a table (otherwise it saves one)
+	 */
+	public boolean isLoader() {
+		return snapshot == null;
+	}
+
+	/**
+	 * @return The file read or written by this worker
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The exception which made this worker fail or null, if it hasn't
+	 *         failed (yet)
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	// LISTENER MECHANISM *************************************
+	// ********************************************************
+
+	/**
+	 * Adds a listener, which is notified when the worker is finished
+	 */
+	public void addDataRetrievalListener(DataRetrievalListener l) {
+		if (l != null)
+			listeners.add(l);
+	}
+
+	/**
+	 * Removes a listener
+	 */
+	public void removeDataRetrievalListener(DataRetrievalListener l) {
+		listeners.remove(l);
+	}
+
+	// SWINGWORKER METHODS ************************************
+	// ********************************************************
+
+	@Override
+	protected Object doInBackground() throws Exception {
+		if (snapshot != null) {
+			snapshot.saveTable(file);
+			return file;
+		}
+		final long length = Math.max(file.length(), 1);
+		InputStream in = new FilterInputStream(new FileInputStream(file)) {
+			private long read = 0;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0)
+					count(1);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0)
+					count(n);
+				return n;
+			}
+
+			private void count(int n) {
+				read += n;
+				setProgress((int) Math.min(99, read * 100 / length));
+			}
+		};
+		try {
+			PolyglotTableModel model = new PolyglotTableModel(in, resource);
+			setProgress(100);
+			return model;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Notifies all listeners
+	 */
+	@Override
+	protected void done() {
+		Object data = null;
+		try {
+			data = get();
+		} catch (ExecutionException ee) {
+			error = ee.getCause() instanceof Exception ? (Exception) ee
+					.getCause() : ee;
+		} catch (Exception e) {
+			// Cancelled or interrupted
+			error = e;
+		}
+		for (DataRetrievalListener l : listeners)
+			l.dataReady(this, data);
+	}
+
+}
@@ -40,7 +40,6 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumnModel;
-import javax.swing.undo.CompoundEdit;
 import javax.swing.undo.UndoManager;
 
 import org.dom4j.Document;
@@ -54,6 +53,7 @@ import fs.polyglot.model.PolyglotString;
 import fs.polyglot.model.PolyglotTableModel;
 import fs.polyglot.model.Variant;
 import fs.polyglot.model.VariantTableModel;
+import fs.polyglot.undo.UndoableCompoundEdit;
 import fs.polyglot.undo.UndoableEditFactory;
 import fs.polyglot.undo.UndoablePolyglotStringEdit;
 import fs.polyglot.undo.UndoableVariantEdit;
@@ -387,6 +387,9 @@ public class StringEditor extends FrameworkDialog implements ResourceDependent{
 				if(component != null) {
 					component.getDocument().addDocumentListener(this);
 					checkGenerateID.addChangeListener(this);
+					//The final id also depends on the group
+					textGroup.getDocument().addDocumentListener(this);
+					checkGroup.addChangeListener(this);
 				}
 			}
 			@Override
@@ -394,6 +397,8 @@ public class StringEditor extends FrameworkDialog implements ResourceDependent{
 				if(component != null) {
 					component.getDocument().removeDocumentListener(this);
 					checkGenerateID.removeChangeListener(this);
+					textGroup.getDocument().removeDocumentListener(this);
+					checkGroup.removeChangeListener(this);
 				}
 			}
 			@Override
@@ -649,8 +654,24 @@ public class StringEditor extends FrameworkDialog implements ResourceDependent{
 		String grouppath = checkGroup.isSelected()? textGroup.getText(): null;
 		//If the entries are not valid, return
 		if(summary.validate().getOverallResult() == Result.INCORRECT) return;
-		CompoundEdit edit = new CompoundEdit();
-		
+		UndoableCompoundEdit edit = editFactory.createUndoableCompoundEdit();
+		//All changes are applied in one batch, so listeners are notified once
+		table.beginBatch();
+		try {
+			performEdits(edit, finalid, grouppath);
+		}
+		finally {
+			table.commitBatch();
+		}
+		edit.end();
+		editFactory.postEdit(edit);
+		flag.setChangeFlag(false);
+	}
+	
+	/**
+	 * Performs all edits necessary to apply the changes to the string finalid in group grouppath and adds them to edit
+	 */
+	private void performEdits(UndoableCompoundEdit edit, String finalid, String grouppath) {
 		//Calculate String edit ---------------------------------------
 		
 		UndoablePolyglotStringEdit stringrem = null; //Remove a string for overwriting it with a new one
@@ -712,10 +733,6 @@ public class StringEditor extends FrameworkDialog implements ResourceDependent{
 				edit.addEdit(variantadd);
 			}
 		}
-		
-		edit.end();
-		editFactory.postEdit(edit);
-		flag.setChangeFlag(false);
 	}
 	
 	/**
@@ -7,6 +7,7 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
@@ -25,7 +26,7 @@ import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
-import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
 
 import org.dom4j.Document;
 
@@ -213,16 +214,13 @@ public class StringTreeView extends JPanel implements ResourceDependent {
 				TreeObject ob = (TreeObject)p.getLastPathComponent();
 				switch(ob.getType()) {
 				case GROUP:
-					//Create compound edit to remove all strings in this group
+					//Create compound edit to remove all strings in this group. Listeners are notified once
 					HashSet<String> idsToRemove = table.getStringsInSubgroups(ob.path);
-					CompoundEdit removeEdit = new CompoundEdit();
+					ArrayList<UndoableEdit> removeEdits = new ArrayList<UndoableEdit>(idsToRemove.size());
 					for(String id : idsToRemove) {
-						UndoablePolyglotStringEdit rem = editFactory.createUndoablePolyglotStringEdit(new PolyglotString(ob.path,id,false), null);
-						rem.redo();
-						removeEdit.addEdit(rem);
+						removeEdits.add(editFactory.createUndoablePolyglotStringEdit(new PolyglotString(ob.path,id,false), null));
 					}
-					removeEdit.end();
-					editFactory.postEdit(removeEdit);
+					editFactory.performUndoableCompoundEdit(removeEdits);
 					break;
 				case POLYGLOTSTRING:
 					editFactory.performUndoablePolyglotStringEdit((PolyglotString)ob, null);
@@ -1,12 +1,15 @@
 package fs.polyglot.view;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -18,6 +21,7 @@ import javax.swing.JProgressBar;
 import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -73,6 +77,9 @@ public class TableEditPane extends JPanel implements ResourceDependent {
 	//Table data
 	private PolyglotTableModel table;
 	
+	//The components disabled by setEditable(false) or null, if the pane is editable
+	private ArrayList<Component> disabledComponents = null;
+	
 	//Resource
 	private ResourceReference resource;
 	private PolyglotStringLoader loader;
@@ -308,6 +315,45 @@ public class TableEditPane extends JPanel implements ResourceDependent {
 		flag.setChangeFlag(f);
 	}
 	
+	/**
+	 * Returns whether the table can be edited in this pane
+	 */
+	public boolean isEditable() {
+		return disabledComponents == null;
+	}
+	
+	/**
+	 * Enables or disables all components of this pane except the status bar. When the pane becomes editable again,
+	 * only the components disabled by this method are enabled again.
+	 */
+	public void setEditable(boolean editable) {
+		if(editable == isEditable()) return;
+		if(editable) {
+			for(Component c : disabledComponents) c.setEnabled(true);
+			disabledComponents = null;
+		}
+		else {
+			disabledComponents = new ArrayList<Component>();
+			for(Component c : getComponents()) {
+				//Keep the status bar, which displays the progress
+				if(!SwingUtilities.isDescendingFrom(progressBar, c)) disableComponent(c);
+			}
+		}
+	}
+	
+	/**
+	 * Disables c and all its enabled descendants and remembers them in disabledComponents
+	 */
+	private void disableComponent(Component c) {
+		if(c.isEnabled()) {
+			c.setEnabled(false);
+			disabledComponents.add(c);
+		}
+		if(c instanceof Container) {
+			for(Component child : ((Container)c).getComponents()) disableComponent(child);
+		}
+	}
+	
 	// RESOURCEDEPENDENT **************************
 	// ********************************************
 	
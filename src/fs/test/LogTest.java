@@ -29,6 +29,11 @@ public class LogTest {
 		l.warn("ik");
 		l.fatal("u");
 		System.out.println(a.getLogHistory());
+		// Bounded history: Only the two most recent messages are kept
+		a.setMaxEntries(2);
+		l.error("bounded");
+		System.out.println(a.getLogHistory());
+		System.out.println(a.getLogHistory(1, 1));
 	}
 
 }
@@ -73,6 +73,20 @@ public class ResourceTest {
 			for (ResourceDependent r : Arrays.asList(rd1, rd2, rd3)) {
 				dir.addResourceDependent(r);
 			}
+
+			// Nest a directory with rd3 and remove it again: The cached
+			// structure must not contain the structure of rd3 anymore
+			ResourceDirectory outer = new ResourceDirectory("./");
+			ResourceDirectory inner = new ResourceDirectory("./");
+			inner.addResourceDependent(rd3);
+			outer.addResourceDependent(rd1);
+			outer.addResourceDependent(inner);
+			System.out.println("With nested directory: "
+					+ outer.getExpectedResourceStructure().asXML());
+			outer.removeResourceDependent(inner);
+			System.out.println("Nested directory removed: "
+					+ outer.getExpectedResourceStructure().asXML());
+
 			dir.verify();
 		} catch (Exception e) {
 			System.out.println(e.getMessage());
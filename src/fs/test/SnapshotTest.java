@@ -0,0 +1,46 @@
+package fs.test;
+
+import fs.xml.*;
+
+import java.io.*;
+
+/**
+ * Tests the PolyglotStringSnapshot class
+ * 
+ * @author Simon Hampe
+ * 
+ */
+public class SnapshotTest {
+
+	public static void main(String[] args) {
+		try {
+			// Load the example table and write a snapshot
+			PolyglotStringTable ex = new PolyglotStringTable(
+					new FileInputStream("examples/PolyglotStringTable.xml"),
+					new ConstantResourceReference("."));
+			File f = File.createTempFile("PolyglotStringTable", ".snapshot");
+			f.deleteOnExit();
+			PolyglotStringSnapshot.write(ex, f);
+			System.out.println("Snapshot size: " + f.length());
+			// Query some strings
+			PolyglotStringSnapshot snap = PolyglotStringSnapshot.open(f);
+			System.out.println("Table ID: " + snap.getTableID());
+			System.out.println("Languages: " + snap.getLanguageList());
+			System.out.println("IDs: " + snap.getIDList());
+			System.out.println("Formatted String: "
+					+ snap.getString("EX01", "de", 42.0, "tadaa!"));
+			System.out.println("Unlisted language: "
+					+ snap.getUnformattedString("EX02", "xy"));
+			System.out.println("Group of EX02: " + snap.getGroupID("EX02"));
+			System.out.println("Missing string: "
+					+ snap.getString("EX99", "de"));
+			// Read it back completely
+			System.out.println("Equal to original: "
+					+ snap.toTable().getConfiguration().asXML().equals(
+							ex.getConfiguration().asXML()));
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+}
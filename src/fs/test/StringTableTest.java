@@ -25,6 +25,19 @@ public class StringTableTest {
 					new ConstantResourceReference("."));
 			// Load some strings
 			showfullReport(ex);
+			// Load it again without building a document
+			PolyglotStringTable streamed;
+			FileInputStream stream = new FileInputStream(
+					"examples/PolyglotStringTable.xml");
+			try {
+				streamed = new PolyglotStringTable(stream,
+						new ConstantResourceReference("."));
+			} finally {
+				stream.close();
+			}
+			System.out.println("Streamed table equals document table: "
+					+ streamed.getConfiguration().asXML().equals(
+							ex.getConfiguration().asXML()));
 			System.out.println("Formatted String: "
 					+ ex.getString("EX01", "de", 42.0, "tadaa!"));
 			// Show output version
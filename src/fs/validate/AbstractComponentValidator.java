@@ -1,16 +1,28 @@
 package fs.validate;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+
+import fs.validate.ValidationResult.Result;
 
 /**
  * This class provides a standard implementation to the class
@@ -22,7 +34,17 @@ import javax.swing.event.ListSelectionListener;
  * ComponentValidator implements some common Swing content listening interfaces,
  * so in the last method it might suffice to add this Validator as a ...listener
  * to the component. On any listener method call, all ChangeListeners are
- * notified
+ * notified. <br>
+ * Document changes arrive with every keystroke, so they are debounced: The
+ * validation and notification take place when no further document change has
+ * occurred for getRevalidationDelay() milliseconds. All other events (and
+ * calls of validate()) are processed immediately and include any pending
+ * document change. <br>
+ * The result of each component is cached. When an event can be attributed to
+ * certain components (see getAffectedComponents(Object)), only these are
+ * validated again, otherwise all components are. The listeners are only
+ * notified, if the overall result has changed by this, so that a summarizing
+ * ValidationValidator doesn't have to do anything on most keystrokes.
  * 
  * @author Simon Hampe
  */
@@ -36,6 +58,42 @@ public abstract class AbstractComponentValidator<T> implements
 	// List of registered components
 	private HashSet<T> components = new HashSet<T>();
 
+	// The last result of each registered component
+	private HashMap<T, Result> results = new HashMap<T, Result>();
+
+	// The number of components in results having a certain result (indexed by
+	// ordinal)
+	private int[] resultCount = new int[Result.values().length];
+
+	// The overall result of the cached results
+	private Result overallResult = Result.CORRECT;
+
+	// Maps the document of each registered text component to the component
+	private HashMap<Document, T> documents = new HashMap<Document, T>();
+
+	/**
+	 * The default delay of a validation after a document change in
+	 * milliseconds. The current value is 150
+	 */
+	public final static int DEFAULT_REVALIDATION_DELAY = 150;
+
+	// The delay of a validation after a document change
+	private int revalidationDelay = DEFAULT_REVALIDATION_DELAY;
+
+	// The last event causing the pending validation or null
+	private ChangeEvent pendingEvent = null;
+
+	// The components affected by all events coalesced into the pending
+	// validation
+	private LinkedHashSet<T> pendingComponents = new LinkedHashSet<T>();
+
+	// Whether one of the coalesced events requires a validation of all
+	// components
+	private boolean pendingAll = false;
+
+	// The timer performing pending validations (created on demand)
+	private Timer revalidationTimer = null;
+
 	/**
 	 * Adds a change listener. Doesn't automatically run a validation
 	 */
@@ -52,6 +110,9 @@ public abstract class AbstractComponentValidator<T> implements
 	public void addComponent(T component) {
 		if (component != null) {
 			components.add(component);
+			if (component instanceof JTextComponent)
+				documents.put(((JTextComponent) component).getDocument(),
+						component);
 			registerToComponent(component);
 			fireStateChanged(new ChangeEvent(this));
 		}
@@ -73,6 +134,11 @@ public abstract class AbstractComponentValidator<T> implements
 	public void removeComponent(T component) {
 		if (components.contains(component)) {
 			components.remove(component);
+			if (component instanceof JTextComponent)
+				documents.remove(((JTextComponent) component).getDocument());
+			Result old = results.remove(component);
+			if (old != null)
+				resultCount[old.ordinal()]--;
 			unregisterFromComponent(component);
 			fireStateChanged(new ChangeEvent(this));
 		}
@@ -84,18 +150,32 @@ public abstract class AbstractComponentValidator<T> implements
 	 * if all these calls return CORRECT. If one returns a WARNING and none
 	 * returns an INCORRECT, WARNING is returned. If one returns an INCORRECT,
 	 * this is returned. All validation listeners are notified of the result of
-	 * this validation
+	 * this validation. The results are cached.
 	 */
 	@Override
 	public ValidationResult validate() {
-		ValidationResult.Result result = ValidationResult.Result.CORRECT;
-		HashMap<Object, ValidationResult.Result> idvResults = new HashMap<Object, ValidationResult.Result>();
 		for (T c : components) {
-			ValidationResult.Result cresult = validate(c);
-			result = ValidationResult.min(result, cresult);
-			idvResults.put(c, cresult);
+			updateResult(c);
 		}
-		return new ValidationResult(result, idvResults);
+		overallResult = computeOverallResult();
+		return getLastResult();
+	}
+
+	/**
+	 * @return The result of the last validation of each component and the
+	 *         overall result of these. No validation is performed.
+	 */
+	public ValidationResult getLastResult() {
+		return new ValidationResult(overallResult,
+				new HashMap<Object, Result>(results));
+	}
+
+	/**
+	 * @return The overall result of the last validation of each component. No
+	 *         validation is performed.
+	 */
+	public Result getLastOverallResult() {
+		return overallResult;
 	}
 
 	/**
@@ -104,6 +184,75 @@ public abstract class AbstractComponentValidator<T> implements
 	 */
 	public abstract ValidationResult.Result validate(T component);
 
+	/**
+	 * This method is called each time a component has been validated, either
+	 * by validate() or by an incremental validation. The default
+	 * implementation does nothing.
+	 */
+	protected void componentValidated(T component, Result result) {
+	}
+
+	/**
+	 * Returns the components whose validity may have changed by an event from
+	 * the specified source (which is the source of the ChangeEvent passed to
+	 * fireStateChanged(..), or the source of this source, if it is an event
+	 * itself). The default implementation returns the component, if the source
+	 * is a registered component or the document of a registered text
+	 * component, and null otherwise. Null means, that all components have to
+	 * be validated again. Subclasses, whose components depend on each other or
+	 * on other sources, may override this to declare these dependencies.
+	 */
+	protected Collection<T> getAffectedComponents(Object source) {
+		T c = documents.get(source);
+		if (c == null && components.contains(source)) {
+			@SuppressWarnings("unchecked")
+			T sc = (T) source;
+			c = sc;
+		}
+		return c != null ? Collections.singleton(c) : null;
+	}
+
+	/**
+	 * Returns the components affected by the specified event (see
+	 * getAffectedComponents(Object)) or null, if all components have to be
+	 * validated again. This is always the case for events with this validator
+	 * as source.
+	 */
+	private Collection<T> getComponentsAffectedBy(ChangeEvent e) {
+		Object source = e.getSource();
+		if (source == this)
+			return null;
+		if (source instanceof DocumentEvent)
+			source = ((DocumentEvent) source).getDocument();
+		else if (source instanceof EventObject)
+			source = ((EventObject) source).getSource();
+		return getAffectedComponents(source);
+	}
+
+	/**
+	 * Validates the component, updates the cached results and calls
+	 * componentValidated(..)
+	 */
+	private void updateResult(T component) {
+		Result r = validate(component);
+		Result old = results.put(component, r);
+		if (old != null)
+			resultCount[old.ordinal()]--;
+		resultCount[r.ordinal()]++;
+		componentValidated(component, r);
+	}
+
+	/**
+	 * Computes the overall result from the cached results
+	 */
+	private Result computeOverallResult() {
+		if (resultCount[Result.INCORRECT.ordinal()] > 0)
+			return Result.INCORRECT;
+		if (resultCount[Result.WARNING.ordinal()] > 0)
+			return Result.WARNING;
+		return Result.CORRECT;
+	}
+
 	/**
 	 * Registers this ComponentValidator to the component in some way, so that
 	 * it is notified of content changes. When a component notifies this
@@ -123,11 +272,89 @@ public abstract class AbstractComponentValidator<T> implements
 	protected abstract void unregisterFromComponent(T component);
 
 	/**
-	 * Notifies all registered listeners of the specified validation event
+	 * @return The delay of a validation after a document change in
+	 *         milliseconds
+	 */
+	public int getRevalidationDelay() {
+		return revalidationDelay;
+	}
+
+	/**
+	 * Sets the delay of a validation after a document change in milliseconds.
+	 * If it is <= 0, document changes are validated immediately.
+	 */
+	public void setRevalidationDelay(int revalidationDelay) {
+		this.revalidationDelay = revalidationDelay;
+	}
+
+	/**
+	 * Calls fireStateChanged(e) as soon as no further call of this method has
+	 * occurred for getRevalidationDelay() milliseconds. If the delay is <= 0,
+	 * it is called immediately. The components affected by the events of all
+	 * calls in between are validated, not only those affected by the last
+	 * one.
+	 */
+	protected void scheduleStateChanged(ChangeEvent e) {
+		if (revalidationDelay <= 0) {
+			fireStateChanged(e);
+			return;
+		}
+		pendingEvent = e;
+		if (!pendingAll) {
+			Collection<T> affected = getComponentsAffectedBy(e);
+			if (affected == null) {
+				pendingAll = true;
+				pendingComponents.clear();
+			} else
+				pendingComponents.addAll(affected);
+		}
+		if (revalidationTimer == null) {
+			revalidationTimer = new Timer(revalidationDelay,
+					new ActionListener() {
+						@Override
+						public void actionPerformed(ActionEvent ae) {
+							if (pendingEvent != null)
+								fireStateChanged(pendingEvent);
+						}
+					});
+			revalidationTimer.setRepeats(false);
+		}
+		revalidationTimer.setInitialDelay(revalidationDelay);
+		revalidationTimer.restart();
+	}
+
+	/**
+	 * Validates all components affected by the specified event again (see
+	 * getAffectedComponents(Object)) and notifies all registered listeners,
+	 * if the overall result has changed. Events with this validator as source
+	 * always cause a validation of all components and a notification. A
+	 * pending validation is cancelled, since it is included in this one.
 	 */
 	protected void fireStateChanged(ChangeEvent e) {
+		pendingEvent = null;
+		if (revalidationTimer != null)
+			revalidationTimer.stop();
 		//First validate for yourself
-		validate();
+		Result before = overallResult;
+		Collection<T> affected = getComponentsAffectedBy(e);
+		// Include the components of the cancelled validation
+		if (pendingAll)
+			affected = null;
+		else if (affected != null && !pendingComponents.isEmpty()) {
+			pendingComponents.addAll(affected);
+			affected = new ArrayList<T>(pendingComponents);
+		}
+		pendingComponents.clear();
+		pendingAll = false;
+		if (affected == null)
+			affected = components;
+		for (T c : affected) {
+			if (components.contains(c))
+				updateResult(c);
+		}
+		overallResult = computeOverallResult();
+		if (overallResult == before && e.getSource() != this)
+			return;
 		for (ChangeListener l : listener) {
 			l.stateChanged(e);
 		}
@@ -144,7 +371,7 @@ public abstract class AbstractComponentValidator<T> implements
 	 */
 	@Override
 	public void changedUpdate(DocumentEvent e) {
-		fireStateChanged(new ChangeEvent(e));
+		scheduleStateChanged(new ChangeEvent(e));
 	}
 
 	/*
@@ -155,7 +382,7 @@ public abstract class AbstractComponentValidator<T> implements
 	 */
 	@Override
 	public void insertUpdate(DocumentEvent e) {
-		fireStateChanged(new ChangeEvent(e));
+		scheduleStateChanged(new ChangeEvent(e));
 	}
 
 	/*
@@ -166,7 +393,7 @@ public abstract class AbstractComponentValidator<T> implements
 	 */
 	@Override
 	public void removeUpdate(DocumentEvent e) {
-		fireStateChanged(new ChangeEvent(e));
+		scheduleStateChanged(new ChangeEvent(e));
 	}
 
 	/*
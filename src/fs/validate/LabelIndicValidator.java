@@ -10,8 +10,8 @@ import fs.gui.SwitchIconLabel;
  * component may be linked to a {@link SwitchIconLabel}, which is modified
  * according to the validation status of the component. The Validator is created
  * with three icons, one for 'correct' state , one for 'warning' and one for
- * 'incorrect' state. After each validation run, the icon of the label for each
- * Component is set accordingly. A tooltip text can also be set.
+ * 'incorrect' state. Each time a component is validated, the icon of its label
+ * is set accordingly. A tooltip text can also be set.
  * 
  * @author Simon Hampe
  */
@@ -48,30 +48,24 @@ public abstract class LabelIndicValidator<T> extends
 	}
 
 	/**
-	 * Runs a validation on all registered components and will set the icons of
-	 * the associated labels accordingly. If an icon for a certain state has
-	 * been set to null, the icon is simply disabled (i.e. setIconVisible(false)
-	 * is called).
+	 * Sets the icon of the label associated to the component according to the
+	 * result of its validation. If an icon for a certain state has been set to
+	 * null, the icon is simply disabled (i.e. setIconVisible(false) is
+	 * called).
 	 */
 	@Override
-	public ValidationResult validate() {
-		ValidationResult result = super.validate();
-		for (Object c : result.getResults().keySet()) {
-			SwitchIconLabel l = labels.get(c);
-			ValidationResult.Result cr = result.getResults().get(c);
-			if (l != null) {
-				ImageIcon iconToSet = (cr == ValidationResult.Result.CORRECT ? correct
-						: (cr == ValidationResult.Result.WARNING ? warning
-								: incorrect));
-				if (iconToSet != null) {
-					l.setIconReference(iconToSet);
-					l.setIconVisible(true);
-				} else
-					l.setIconVisible(false);
-			}
-
+	protected void componentValidated(T component, ValidationResult.Result cr) {
+		SwitchIconLabel l = labels.get(component);
+		if (l != null) {
+			ImageIcon iconToSet = (cr == ValidationResult.Result.CORRECT ? correct
+					: (cr == ValidationResult.Result.WARNING ? warning
+							: incorrect));
+			if (iconToSet != null) {
+				l.setIconReference(iconToSet);
+				l.setIconVisible(true);
+			} else
+				l.setIconVisible(false);
 		}
-		return result;
 	}
 
 	/**
@@ -9,10 +9,13 @@ import javax.swing.event.ChangeListener;
 /**
  * This class serves as a summarizing container for several
  * {@link ComponentValidator}s. It listens to each registered validator. On a
- * stateChanged event, it calls a validation on each validator and afterwards
- * the abstract method validationPerformed with the result as argument. This can
- * for example be used in dialogs, where the dialog reacts according to whether
- * all entries are correct or not.
+ * stateChanged event, it combines the results of all validators and calls the
+ * abstract method validationPerformed with the result as argument, if the
+ * overall result has changed. An {@link AbstractComponentValidator} is not
+ * validated again for this, since it has already validated the changed
+ * components and caches its results. This can for example be used in dialogs,
+ * where the dialog reacts according to whether all entries are correct or
+ * not.
  * 
  * @author Simon Hampe
  * 
@@ -25,6 +28,9 @@ public abstract class ValidationValidator implements ChangeListener {
 	// List of registered componentvalidators
 	private HashSet<ComponentValidator> cv = new HashSet<ComponentValidator>();
 
+	// The overall result passed on to validationPerformed last or null
+	private ValidationResult.Result lastResult = null;
+
 	/**
 	 * Registers a validator and adds this object as a change listener
 	 */
@@ -46,16 +52,36 @@ public abstract class ValidationValidator implements ChangeListener {
 	}
 
 	/**
-	 * Performs a validation run on all registered {@link ComponentValidator}s
-	 * and calls the method validationPerformed with the final result.
+	 * Combines the current results of all registered
+	 * {@link ComponentValidator}s and calls the method validationPerformed
+	 * with the final result, if the overall result has changed since the last
+	 * call. Only validators which don't cache their results are validated
+	 * again.
 	 */
 	@Override
 	public void stateChanged(ChangeEvent e) {
-		validate();
+		ValidationResult.Result result = ValidationResult.Result.CORRECT;
+		for (ComponentValidator<?> v : cv) {
+			result = ValidationResult.min(result,
+					v instanceof AbstractComponentValidator<?> ? ((AbstractComponentValidator<?>) v)
+							.getLastOverallResult()
+							: v.validate().getOverallResult());
+		}
+		if (result == lastResult)
+			return;
+		HashMap<Object, ValidationResult.Result> idvResults = new HashMap<Object, ValidationResult.Result>();
+		for (ComponentValidator<?> v : cv) {
+			idvResults.putAll((v instanceof AbstractComponentValidator<?> ? ((AbstractComponentValidator<?>) v)
+					.getLastResult()
+					: v.validate()).getResults());
+		}
+		lastResult = result;
+		validationPerformed(new ValidationResult(result, idvResults));
 	}
 
 	/**
-	 * Calculates the overall validation status and calls calculateResult;
+	 * Performs a validation run on all registered validators and calls
+	 * validationPerformed with the final result.
 	 * @return The overall validation result.
 	 */
 	public ValidationResult validate() {
@@ -68,6 +94,7 @@ public abstract class ValidationValidator implements ChangeListener {
 			idvResults.putAll(vresult.getResults());
 		}
 		ValidationResult r = new ValidationResult(result, idvResults); 
+		lastResult = result;
 		validationPerformed(r);
 		return r;
 	}
@@ -81,8 +108,8 @@ public abstract class ValidationValidator implements ChangeListener {
 //	}
 
 	/**
-	 * This method is called after a change in a component has been noted and a
-	 * full validation run over all registered validators has been performed.
+	 * This method is called after validate() and after a change in a component
+	 * has changed the overall result of the registered validators.
 	 * The validation result returns the best result of all these runs as
 	 * overall result.
 	 */
@@ -0,0 +1,217 @@
+package fs.xml;
+
+import java.util.*;
+
+/**
+ * A format string in the syntax of java.util.Formatter, which has been parsed
+ * once into literal text and format specifiers. Formatting a template only
+ * substitutes the arguments: Plain '%s' specifiers are replaced directly, all
+ * other specifiers are passed one by one to a Formatter. Argument indices
+ * (explicit, relative and ordinary) are resolved exactly as String.format
+ * would do it. <br>
+ * Templates are immutable and can be shared freely.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class FormatTemplate {
+
+	// The valid conversion characters of java.util.Formatter
+	private final static String conversions = "bBhHsScCdoxXeEfgGaAtT%n";
+
+	// The valid flag characters of java.util.Formatter
+	private final static String flags = "-#+ 0,(<";
+
+	// The original pattern
+	private final String pattern;
+
+	// Literal text preceding each specifier. literals[specs.length] is the
+	// text after the last specifier
+	private final String[] literals;
+
+	// The parsed specifiers
+	private final Specifier[] specs;
+
+	/**
+	 * A single format specifier
+	 */
+	private static class Specifier {
+		// The explicit argument index (starting at 1), 0 for ordinary
+		// indexing and -1 for relative indexing
+		int index;
+		// The specifier without argument index, as understood by Formatter
+		String text;
+		// The conversion character
+		char conversion;
+		// True, if the specifier has no flags, width or precision
+		boolean plain;
+	}
+
+	// CONSTRUCTOR **************************************
+	// **************************************************
+
+	private FormatTemplate(String pattern, String[] literals, Specifier[] specs) {
+		this.pattern = pattern;
+		this.literals = literals;
+		this.specs = specs;
+	}
+
+	/**
+	 * Parses the specified pattern. Returns null, if the pattern contains no
+	 * specifiers at all (so it can be used as it is) or if it can't be parsed
+	 * (so String.format will report the appropriate error).
+	 */
+	public static FormatTemplate compile(String pattern) {
+		if (pattern == null || pattern.indexOf('%') < 0)
+			return null;
+		ArrayList<String> literals = new ArrayList<String>();
+		ArrayList<Specifier> specs = new ArrayList<Specifier>();
+		int start = 0;
+		int i = pattern.indexOf('%');
+		while (i >= 0) {
+			literals.add(pattern.substring(start, i));
+			int pos = i + 1;
+			Specifier spec = new Specifier();
+			// Argument index
+			int digits = skipDigits(pattern, pos);
+			if (digits > pos && digits < pattern.length()
+					&& pattern.charAt(digits) == '$') {
+				try {
+					spec.index = Integer.parseInt(pattern.substring(pos, digits));
+				} catch (NumberFormatException ne) {
+					return null;
+				}
+				if (spec.index < 1)
+					return null;
+				pos = digits + 1;
+			}
+			// Flags, width and precision
+			int flagStart = pos;
+			while (pos < pattern.length()
+					&& flags.indexOf(pattern.charAt(pos)) >= 0)
+				pos++;
+			String flagString = pattern.substring(flagStart, pos);
+			if (flagString.indexOf('<') >= 0) {
+				spec.index = -1;
+				flagString = flagString.replace("<", "");
+			}
+			int widthStart = pos;
+			pos = skipDigits(pattern, pos);
+			String width = pattern.substring(widthStart, pos);
+			String precision = "";
+			if (pos < pattern.length() && pattern.charAt(pos) == '.') {
+				int precisionEnd = skipDigits(pattern, pos + 1);
+				if (precisionEnd == pos + 1)
+					return null;
+				precision = pattern.substring(pos, precisionEnd);
+				pos = precisionEnd;
+			}
+			// Conversion, possibly with date/time prefix
+			if (pos >= pattern.length()
+					|| conversions.indexOf(pattern.charAt(pos)) < 0)
+				return null;
+			String conversion = pattern.substring(pos, pos + 1);
+			spec.conversion = pattern.charAt(pos);
+			if (spec.conversion == 't' || spec.conversion == 'T') {
+				pos++;
+				if (pos >= pattern.length())
+					return null;
+				conversion = conversion + pattern.charAt(pos);
+			}
+			pos++;
+			spec.plain = flagString.length() == 0 && width.length() == 0
+					&& precision.length() == 0;
+			spec.text = "%" + flagString + width + precision + conversion;
+			// Let Formatter check the flags once, so that illegal
+			// combinations are reported before any missing arguments
+			if (!spec.plain) {
+				try {
+					new Formatter(new StringBuilder()).format(spec.text,
+							(Object) null);
+				} catch (IllegalFormatException ie) {
+					return null;
+				}
+			}
+			specs.add(spec);
+			start = pos;
+			i = pattern.indexOf('%', pos);
+		}
+		literals.add(pattern.substring(start));
+		return new FormatTemplate(pattern, literals.toArray(new String[0]),
+				specs.toArray(new Specifier[0]));
+	}
+
+	// FORMATTING ***************************************
+	// **************************************************
+
+	/**
+	 * Returns the pattern with all specifiers replaced by the appropriate
+	 * arguments, i.e. the same as String.format(getPattern(), args)
+	 *
+	 * @throws MissingFormatArgumentException
+	 *             - if the arguments provided do not match the format (a
+	 *             surplus of arguments will be ignored).
+	 */
+	public String format(Object... args) throws MissingFormatArgumentException {
+		StringBuilder b = new StringBuilder(pattern.length() + 16 * specs.length);
+		Formatter formatter = null;
+		int ordinary = -1;
+		int last = -1;
+		for (int i = 0; i < specs.length; i++) {
+			b.append(literals[i]);
+			Specifier spec = specs[i];
+			// Specifiers without argument
+			if (spec.conversion == '%' || spec.conversion == 'n') {
+				if (!spec.plain) {
+					if (formatter == null)
+						formatter = new Formatter(b);
+					formatter.format(spec.text);
+				} else if (spec.conversion == '%')
+					b.append('%');
+				else
+					b.append(System.getProperty("line.separator"));
+				continue;
+			}
+			// Resolve the argument index
+			int index;
+			if (spec.index > 0)
+				index = spec.index - 1;
+			else if (spec.index < 0) {
+				index = last;
+				if (index < 0)
+					throw new MissingFormatArgumentException(spec.text);
+			} else
+				index = ++ordinary;
+			if (args != null && index > args.length - 1)
+				throw new MissingFormatArgumentException(spec.text);
+			last = index;
+			Object arg = args == null ? null : args[index];
+			// Substitute
+			if (spec.plain && spec.conversion == 's'
+					&& !(arg instanceof Formattable)) {
+				b.append(arg == null ? "null" : arg.toString());
+			} else {
+				if (formatter == null)
+					formatter = new Formatter(b);
+				formatter.format(spec.text, arg);
+			}
+		}
+		b.append(literals[specs.length]);
+		return b.toString();
+	}
+
+	/**
+	 * @return The pattern this template was compiled from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	// Returns the position of the first non-digit at or after pos
+	private static int skipDigits(String s, int pos) {
+		while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '9')
+			pos++;
+		return pos;
+	}
+
+}
@@ -1,6 +1,8 @@
 package fs.xml;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A kind of read-only facade for a PolyglotStringTable. A string loader is
@@ -8,10 +10,22 @@ import java.util.*;
  * another table for each query. Queries without any table reference will be
  * directed to the associated table. However the string loader can be configured
  * to handle a query in a way a bit more advanced than a standard string table.
- * This class is essentially immutable (at least as far as String can be
- * considered immutable). The associated table is fully cloned at creation time.<br>
- * - A default language id can be specified, so that each time a queried string
- * does not exist in a certain language, it is queried in the default language. <br>
+ * The associated table is cloned at creation time and never changed
+ * afterwards. Since clones share their content with the original table until
+ * the original is changed, this takes constant time and no additional memory,
+ * so any number of loaders may be created for the same table. The table can
+ * only be exchanged as a whole via replaceTable(..), which publishes the new
+ * table atomically. Thus a string loader can be shared by any number of
+ * threads, which query it without taking any locks, while another thread
+ * replaces its table.<br>
+ * - Each query follows a chain of fallback languages: A language id is
+ * truncated in the style of BCP 47 (e.g. "de-CH" falls back to "de"), then
+ * any fallback languages configured for it are tried and finally the default
+ * language id. The results of queries of the associated table (including
+ * failed ones) are cached by query language, so that a repeated query costs a
+ * single lookup, no matter how many fallbacks it took. The cache is discarded
+ * whenever the table is replaced, and also when it exceeds a fixed size, since
+ * string and language ids are supplied by callers. <br>
  * - The string loader can be configured to return a preconfigured string
  * instead of null, if a queried string does not exist (that is, neither for the
  * original query, nor for any default language)
@@ -32,16 +46,86 @@ public class PolyglotStringLoader {
 	 */
 	private String failReturnValue;
 	/**
-	 * The associated PolyglotStringTable
+	 * The associated table together with its lookup caches. It is never
+	 * modified, but only replaced as a whole, when the table or the fallback
+	 * configuration changes. Null, if there is no associated table.
 	 */
-	private PolyglotStringTable internalTable = null;
+	private volatile TableState state = null;
+	/**
+	 * The configured fallback languages. Replaced as a whole, when they
+	 * change
+	 */
+	private volatile Fallbacks fallbacks = new Fallbacks(new HashMap<String, String[]>());
 	/**
 	 * The default string loader used by all fsframework classes internally. The
 	 * default language is english and the fail return value is the empty string
 	 * (not null for reasons of stability). It is accessed via the
 	 * loadDefaultLoader() and getDefaultLoader() methods
 	 */
-	private static PolyglotStringLoader defaultLoader = null;
+	private static volatile PolyglotStringLoader defaultLoader = null;
+
+	/**
+	 * A table together with the results of all queries resolved so far, using
+	 * the given fallbacks
+	 */
+	private static class TableState {
+		final PolyglotStringTable table;
+		final Fallbacks fallbacks;
+		// Maps query language id ("" for null) to string id to resolution
+		final ConcurrentHashMap<String, ConcurrentHashMap<String, Resolution>> resolved = new ConcurrentHashMap<String, ConcurrentHashMap<String, Resolution>>();
+		// The number of cached resolutions (approximately, since it is not
+		// updated atomically with the map)
+		final AtomicInteger resolvedCount = new AtomicInteger();
+
+		TableState(PolyglotStringTable table, Fallbacks fallbacks) {
+			this.table = table;
+			this.fallbacks = fallbacks;
+		}
+	}
+
+	/**
+	 * The maximal number of resolutions cached for a table. If it is exceeded,
+	 * the cache is cleared and filled again by the following queries
+	 */
+	private final static int maxCachedResolutions = 65536;
+
+	/**
+	 * The maximal number of fallback chains cached for one fallback
+	 * configuration. If it is exceeded, the cached chains are cleared
+	 */
+	private final static int maxCachedChains = 256;
+
+	/**
+	 * The explicitly configured fallback languages and the fallback chains
+	 * computed from them so far
+	 */
+	private static class Fallbacks {
+		// Maps language id to its fallback languages. Never modified
+		final HashMap<String, String[]> configured;
+		// Maps language id ("" for null) to its fallback chain
+		final ConcurrentHashMap<String, String[]> chains = new ConcurrentHashMap<String, String[]>();
+
+		Fallbacks(HashMap<String, String[]> configured) {
+			this.configured = configured;
+		}
+	}
+
+	/**
+	 * The variant a query resolved to (after following the fallback chain)
+	 * and its format template. The variant is null, if the query failed
+	 */
+	private static class Resolution {
+		final String variant;
+		final FormatTemplate template;
+
+		Resolution(String variant, FormatTemplate template) {
+			this.variant = variant;
+			this.template = template;
+		}
+	}
+
+	// The resolution of queries that failed
+	private final static Resolution unresolved = new Resolution(null, null);
 
 	// CONSTRUCTOR **************************************
 	// **************************************************
@@ -58,7 +142,7 @@ public class PolyglotStringLoader {
 		this.defaultLanguageID = defaultLanguageID;
 		this.failReturnValue = failReturnValue;
 		if (table != null)
-			internalTable = table.clone();
+			state = new TableState(table.clone(), fallbacks);
 	}
 
 	// GENERAL QUERY METHODS *****************************
@@ -67,10 +151,10 @@ public class PolyglotStringLoader {
 	/**
 	 * Queries a string from the specified table in exact the same way that
 	 * PolyglotStringTable.getString(..) does. If the string does not exist,
-	 * another query is made for the default language id (if it isn't null) and
-	 * in case of success the result is returned. If the string still does not
-	 * exist, the failReturnValue is returned. Automatically returns this value,
-	 * if table == null
+	 * the languages of the fallback chain of languageID are queried in turn
+	 * (see getFallbackChain(String)) and the first result is returned. If the
+	 * string doesn't exist in any of them, the failReturnValue is returned.
+	 * Automatically returns this value, if table == null
 	 * 
 	 * @throws MissingFormatArgumentException
 	 *             - if the arguments provided do not match the string's format
@@ -81,47 +165,137 @@ public class PolyglotStringLoader {
 			throws MissingFormatArgumentException {
 		if (table == null)
 			return failReturnValue;
-		String ret = table.getString(stringID, languageID, args);
-		if (ret != null)
-			return ret;
-		else {
-			if (defaultLanguageID != null) {
-				ret = table.getString(stringID, defaultLanguageID, args);
-				if (ret != null)
-					return ret;
-				else
-					return failReturnValue;
-			} else
-				return failReturnValue;
+		for (String lid : getFallbackChain(fallbacks, languageID)) {
+			String ret = table.getString(stringID, lid, args);
+			if (ret != null)
+				return ret;
 		}
+		return failReturnValue;
 	}
 
 	/**
 	 * Queries a string from the specified table in exact the same way that
-	 * PolyglotStringTable.getString(..) does. If the string does not exist,
-	 * another query is made for the default language id (if it isn't null) and
-	 * in case of success the result is returned. If the string still does not
-	 * exist, the failReturnValue is returned. Automatically returns this value,
-	 * if table == null.<br>
+	 * PolyglotStringTable.getUnformattedString(..) does. If the string does not
+	 * exist, the languages of the fallback chain of languageID are queried in
+	 * turn (see getFallbackChain(String)) and the first result is returned.
+	 * If the string doesn't exist in any of them, the failReturnValue is
+	 * returned. Automatically returns this value, if table == null.<br>
 	 * Any format specifiers are treated and returned as normal characters.
 	 */
 	public String queryStringUnformatted(PolyglotStringTable table,
 			String stringID, String languageID) {
 		if (table == null)
 			return failReturnValue;
-		String ret = table.getString(stringID, languageID);
-		if (ret != null)
-			return ret;
-		else {
-			if (defaultLanguageID != null) {
-				ret = table.getString(stringID, defaultLanguageID);
-				if (ret != null)
-					return ret;
-				else
-					return failReturnValue;
-			} else
-				return failReturnValue;
+		for (String lid : getFallbackChain(fallbacks, languageID)) {
+			String ret = table.getUnformattedString(stringID, lid);
+			if (ret != null)
+				return ret;
 		}
+		return failReturnValue;
+	}
+
+	/**
+	 * Returns the languages queried for languageID, in this order: <br>
+	 * - languageID itself and all its truncations, where a truncation removes
+	 * the last subtag (separated by '-') together with a preceding single
+	 * character subtag (e.g. "de-CH-x-sg", "de-CH", "de") <br>
+	 * - The fallback languages configured for any of these ids (see
+	 * setFallbackLanguages(..)) and their truncations <br>
+	 * - The default language id and its truncations <br>
+	 * Each language appears only once. If languageID == null, only the
+	 * default language is queried.
+	 */
+	public String[] getFallbackChain(String languageID) {
+		return getFallbackChain(fallbacks, languageID).clone();
+	}
+
+	/**
+	 * Returns the (cached) fallback chain of languageID for the given
+	 * fallback configuration. The returned array must not be modified
+	 */
+	private String[] getFallbackChain(Fallbacks f, String languageID) {
+		String key = languageID == null ? "" : languageID;
+		String[] chain = f.chains.get(key);
+		if (chain == null) {
+			LinkedHashSet<String> languages = new LinkedHashSet<String>();
+			addTruncations(languages, languageID);
+			for (String lid : new ArrayList<String>(languages)) {
+				String[] fallbackIDs = f.configured.get(lid);
+				if (fallbackIDs != null) {
+					for (String fallback : fallbackIDs)
+						addTruncations(languages, fallback);
+				}
+			}
+			addTruncations(languages, defaultLanguageID);
+			chain = languages.toArray(new String[0]);
+			// Language ids are supplied by callers, so the cache is bounded
+			if (f.chains.size() >= maxCachedChains)
+				f.chains.clear();
+			f.chains.put(key, chain);
+		}
+		return chain;
+	}
+
+	// Adds languageID and all its truncations to the set
+	private static void addTruncations(LinkedHashSet<String> languages,
+			String languageID) {
+		String lid = languageID;
+		while (lid != null && lid.length() > 0) {
+			languages.add(lid);
+			int cut = lid.lastIndexOf('-');
+			if (cut < 0)
+				break;
+			lid = lid.substring(0, cut);
+			// Don't end with a singleton like the 'x' of private use tags
+			int previous = lid.lastIndexOf('-');
+			if (lid.length() - previous == 2)
+				lid = previous < 0 ? null : lid.substring(0, previous);
+		}
+	}
+
+	/**
+	 * Looks up the cached resolution of a query to the associated table or
+	 * resolves it by following the fallback chain. Failed queries are cached
+	 * as well.
+	 */
+	private Resolution resolve(TableState s, String stringID, String languageID) {
+		if (stringID == null)
+			return unresolved;
+		String key = languageID == null ? "" : languageID;
+		ConcurrentHashMap<String, Resolution> forLanguage = s.resolved.get(key);
+		if (forLanguage == null) {
+			forLanguage = new ConcurrentHashMap<String, Resolution>();
+			ConcurrentHashMap<String, Resolution> existing = s.resolved
+					.putIfAbsent(key, forLanguage);
+			if (existing != null)
+				forLanguage = existing;
+		}
+		Resolution r = forLanguage.get(stringID);
+		if (r == null) {
+			r = resolveUncached(s, stringID, languageID);
+			// Ids are supplied by callers, so the cache is bounded
+			if (s.resolvedCount.incrementAndGet() > maxCachedResolutions) {
+				s.resolved.clear();
+				s.resolvedCount.set(1);
+			}
+			forLanguage.put(stringID, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Resolves a query to the associated table by following the fallback
+	 * chain, without using the cache
+	 */
+	private Resolution resolveUncached(TableState s, String stringID,
+			String languageID) {
+		for (String lid : getFallbackChain(s.fallbacks, languageID)) {
+			String variant = s.table.getUnformattedString(stringID, lid);
+			if (variant != null)
+				return new Resolution(variant, s.table.getTemplate(stringID,
+						lid));
+		}
+		return unresolved;
 	}
 
 	// GETTER METHODS ************************
@@ -145,20 +319,69 @@ public class PolyglotStringLoader {
 	 * @return True, if the associated table is non-null, false otherwise
 	 */
 	public boolean hasAssociatedTable() {
-		return internalTable != null;
+		return state != null;
 	}
 
 	/**
-	 * Convenience method used to abort any delegate call, if internalTable ==
-	 * null
+	 * Convenience method used to abort any delegate call, if no table is
+	 * associated. Otherwise the current table is returned, so that each delegate
+	 * call works on a single version of the table, even if it is replaced in
+	 * the meantime.
 	 * 
 	 * @throws UnsupportedOperationException
-	 *             - if internalTable == null
+	 *             - if no table is associated
 	 */
-	private void precheckDelegate() throws UnsupportedOperationException {
-		if (internalTable == null)
+	private PolyglotStringTable precheckDelegate()
+			throws UnsupportedOperationException {
+		return precheckState().table;
+	}
+
+	/**
+	 * Does the same as precheckDelegate(), but returns the table together
+	 * with its caches
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             - if no table is associated
+	 */
+	private TableState precheckState() throws UnsupportedOperationException {
+		TableState s = state;
+		if (s == null)
 			throw new UnsupportedOperationException(
 					"Can't delegate call. No table is associated to this loader.");
+		return s;
+	}
+
+	// SETTER METHODS ************************
+	// ***************************************
+
+	/**
+	 * Sets the languages to query (in this order), if a string does not exist
+	 * in languageID or its truncations, but before the default language is
+	 * queried. Calling this without fallbacks removes the configured fallback
+	 * languages of languageID. All cached query results are discarded.
+	 */
+	public synchronized void setFallbackLanguages(String languageID,
+			String... fallbackIDs) {
+		HashMap<String, String[]> configured = new HashMap<String, String[]>(
+				fallbacks.configured);
+		if (fallbackIDs == null || fallbackIDs.length == 0)
+			configured.remove(languageID);
+		else
+			configured.put(languageID, fallbackIDs.clone());
+		fallbacks = new Fallbacks(configured);
+		TableState s = state;
+		if (s != null)
+			state = new TableState(s.table, fallbacks);
+	}
+
+	/**
+	 * Associates a clone of the specified table to this loader, replacing the
+	 * current one. The clone is made before it is published, so concurrent
+	 * queries are never blocked and see either the old or the new table. If
+	 * table == null, the loader will have no associated table afterwards.
+	 */
+	public synchronized void replaceTable(PolyglotStringTable table) {
+		state = table == null ? null : new TableState(table.clone(), fallbacks);
 	}
 
 	// DELEGATE METHODS FOR THE TABLE *********************
@@ -171,8 +394,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getIdentifier()
 	 */
 	public String getIdentifier() {
-		precheckDelegate();
-		return internalTable.getIdentifier();
+		return precheckDelegate().getIdentifier();
 	}
 
 	/**
@@ -182,8 +404,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getIDList()
 	 */
 	public HashSet<String> getIDList() {
-		precheckDelegate();
-		return internalTable.getIDList();
+		return precheckDelegate().getIDList();
 	}
 
 	/**
@@ -193,8 +414,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getLanguageDescription(java.lang.String)
 	 */
 	public String getLanguageDescription(String languageID) {
-		precheckDelegate();
-		return internalTable.getLanguageDescription(languageID);
+		return precheckDelegate().getLanguageDescription(languageID);
 	}
 
 	/**
@@ -204,8 +424,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getLanguageList()
 	 */
 	public HashSet<String> getLanguageList() {
-		precheckDelegate();
-		return internalTable.getLanguageList();
+		return precheckDelegate().getLanguageList();
 	}
 	
 	/**
@@ -214,8 +433,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getSupport(String)
 	 */
 	public int getSupport(String languageID) {
-		precheckDelegate();
-		return internalTable.getSupport(languageID);
+		return precheckDelegate().getSupport(languageID);
 	}
 
 	/**
@@ -225,8 +443,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getMissingStrings()
 	 */
 	public HashMap<String, HashSet<String>> getMissingStrings() {
-		precheckDelegate();
-		return internalTable.getMissingStrings();
+		return precheckDelegate().getMissingStrings();
 	}
 
 	/**
@@ -240,8 +457,15 @@ public class PolyglotStringLoader {
 	 */
 	public String getString(String stringID, String languageID, Object... args)
 			throws MissingFormatArgumentException {
-		precheckDelegate();
-		return queryString(internalTable, stringID, languageID, args);
+		Resolution r = resolve(precheckState(), stringID, languageID);
+		if (r.variant == null)
+			return failReturnValue;
+		if (r.template != null)
+			return r.template.format(args);
+		// Either there are no specifiers or String.format has to report an
+		// error
+		return r.variant.indexOf('%') < 0 ? r.variant : String.format(
+				r.variant, args);
 	}
 
 	/**
@@ -251,8 +475,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getTableDescription()
 	 */
 	public String getTableDescription() {
-		precheckDelegate();
-		return internalTable.getTableDescription();
+		return precheckDelegate().getTableDescription();
 	}
 
 	/**
@@ -262,8 +485,7 @@ public class PolyglotStringLoader {
 	 * @see fs.xml.PolyglotStringTable#getTableID()
 	 */
 	public String getTableID() {
-		precheckDelegate();
-		return internalTable.getTableID();
+		return precheckDelegate().getTableID();
 	}
 
 	/**
@@ -275,8 +497,8 @@ public class PolyglotStringLoader {
 	 *      java.lang.String)
 	 */
 	public String getUnformattedString(String stringID, String languageID) {
-		precheckDelegate();
-		return queryStringUnformatted(internalTable, stringID, languageID);
+		Resolution r = resolve(precheckState(), stringID, languageID);
+		return r.variant == null ? failReturnValue : r.variant;
 	}
 
 	// THE DEFAULT FSFRAMEWORK STRING LOADER ********
@@ -289,17 +511,16 @@ public class PolyglotStringLoader {
 	 * before or accessible under the default reference. This method will be a
 	 * loader without associated table, if the table cannot be loaded. The
 	 * fsframework default loader has as default language the fsframework
-	 * default language and fail return value "" (i.e. the empty string).
+	 * default language and fail return value "" (i.e. the empty string). The
+	 * new loader is published atomically, so threads still using the previous
+	 * default loader are not affected.
 	 */
 	public static PolyglotStringLoader loadDefaultLoader() {
 		PolyglotStringTable table = PolyglotStringTable.getFsfwTable();
-		if (table == null)
-			defaultLoader = new PolyglotStringLoader(null,
-					PolyglotStringTable.defaultLanguageID, "");
-		else
-			defaultLoader = new PolyglotStringLoader(table,
-					PolyglotStringTable.defaultLanguageID, "");
-		return defaultLoader;
+		PolyglotStringLoader loader = new PolyglotStringLoader(table,
+				PolyglotStringTable.defaultLanguageID, "");
+		defaultLoader = loader;
+		return loader;
 	}
 
 	/**
@@ -308,7 +529,8 @@ public class PolyglotStringLoader {
 	 * called.
 	 */
 	public static PolyglotStringLoader getDefaultLoader() {
-		return defaultLoader == null ? loadDefaultLoader() : defaultLoader;
+		PolyglotStringLoader loader = defaultLoader;
+		return loader == null ? loadDefaultLoader() : loader;
 	}
 
 }
@@ -0,0 +1,436 @@
+package fs.xml;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A read-only, binary snapshot of a PolyglotStringTable. The XML document
+ * remains the editable source format, a snapshot is generated from a table via
+ * write(PolyglotStringTable, File) and can be opened via open(File). Opening a
+ * snapshot maps the file into memory and only reads the language index, so
+ * querying a few strings does not require reading the whole table. <br>
+ * The file consists of (all integers big endian):<br>
+ * - A header: magic number, version, references to table id and description,
+ * number of languages, number of strings, size of the hash index and the
+ * offsets of the following sections <br>
+ * - The language index: For each language slot a reference to its id and its
+ * description (-1, if the language is only used, but not listed) <br>
+ * - The hash index: An open addressing table mapping the hash of a string id
+ * to the number of its entry (-1 for empty buckets) <br>
+ * - The entries: For each string id a reference to the id, to its group (or
+ * -1) and to its variant in each language slot (or -1) <br>
+ * - The string pool: Each string as its UTF-8 length followed by its UTF-8
+ * bytes. References are offsets relative to the beginning of the pool. Equal
+ * strings are only stored once.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class PolyglotStringSnapshot {
+
+	// The magic number identifying snapshot files ("PSTS")
+	private final static int magic = 0x50535453;
+
+	// The version of the file format
+	private final static int version = 1;
+
+	// The size of the header in bytes
+	private final static int headerSize = 44;
+
+	private final static Charset utf8 = Charset.forName("UTF-8");
+
+	// The mapped file
+	private final ByteBuffer buffer;
+
+	// Layout information read from the header
+	private final int languageCount;
+	private final int entryCount;
+	private final int hashSize;
+	private final int hashOffset;
+	private final int entryOffset;
+	private final int poolOffset;
+
+	// The language index, which is always read completely
+	private final HashMap<String, Integer> languageSlots = new HashMap<String, Integer>();
+	private final HashMap<String, String> languageTable = new HashMap<String, String>();
+
+	// The format templates of the variants queried so far, by pool reference
+	private final ConcurrentHashMap<Integer, FormatTemplate> templates = new ConcurrentHashMap<Integer, FormatTemplate>();
+
+	// Table id and description
+	private final String id;
+	private final String description;
+
+	// CONSTRUCTOR **************************************
+	// **************************************************
+
+	/**
+	 * Reads header and language index from the mapped buffer
+	 */
+	private PolyglotStringSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < headerSize || buffer.getInt(0) != magic)
+			throw new IOException("Not a polyglot string snapshot");
+		if (buffer.getInt(4) != version)
+			throw new IOException("Unsupported snapshot version: "
+					+ buffer.getInt(4));
+		languageCount = buffer.getInt(16);
+		entryCount = buffer.getInt(20);
+		hashSize = buffer.getInt(24);
+		int languageOffset = buffer.getInt(28);
+		hashOffset = buffer.getInt(32);
+		entryOffset = buffer.getInt(36);
+		poolOffset = buffer.getInt(40);
+		id = readString(buffer.getInt(8));
+		description = readString(buffer.getInt(12));
+		for (int i = 0; i < languageCount; i++) {
+			String lid = readString(buffer.getInt(languageOffset + 8 * i));
+			languageSlots.put(lid, i);
+			int descRef = buffer.getInt(languageOffset + 8 * i + 4);
+			if (descRef >= 0)
+				languageTable.put(lid, readString(descRef));
+		}
+	}
+
+	/**
+	 * Opens the specified snapshot file by mapping it into memory. The file
+	 * must not be changed as long as the snapshot is in use.
+	 *
+	 * @throws IOException
+	 *             - if the file can't be read or is not a snapshot file
+	 */
+	public static PolyglotStringSnapshot open(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// The mapping stays valid after the channel is closed
+			return new PolyglotStringSnapshot(channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	// GETTER METHODS ***********************************
+	// **************************************************
+
+	/**
+	 * Does the same as PolyglotStringTable.getString(..) for the table this
+	 * snapshot was created from.
+	 *
+	 * @throws MissingFormatArgumentException
+	 *             - if the arguments provided do not match the string's format
+	 *             (a surplus of arguments will be ignored).
+	 */
+	public String getString(String stringID, String languageID, Object... args)
+			throws MissingFormatArgumentException {
+		int ref = getVariantRef(stringID, languageID);
+		if (ref < 0)
+			return null;
+		String ret = readString(ref);
+		if (ret.indexOf('%') < 0)
+			return ret;
+		FormatTemplate template = templates.get(ref);
+		if (template == null) {
+			template = FormatTemplate.compile(ret);
+			if (template == null)
+				return String.format(ret, args);
+			templates.put(ref, template);
+		}
+		return template.format(args);
+	}
+
+	/**
+	 * Does the same as PolyglotStringTable.getUnformattedString(..) for the
+	 * table this snapshot was created from.
+	 */
+	public String getUnformattedString(String stringID, String languageID) {
+		return readString(getVariantRef(stringID, languageID));
+	}
+
+	/**
+	 * Returns the group id of the string or null, if it doesn't exist or has
+	 * no group
+	 */
+	public String getGroupID(String stringID) {
+		int entry = findEntry(stringID);
+		if (entry < 0)
+			return null;
+		return readString(buffer.getInt(getEntryPosition(entry) + 4));
+	}
+
+	/**
+	 * Returns whether stringID exists in this snapshot
+	 */
+	public boolean containsStringID(String stringID) {
+		return findEntry(stringID) >= 0;
+	}
+
+	/**
+	 * Returns the list of languages the table claims to support
+	 */
+	public HashSet<String> getLanguageList() {
+		return new HashSet<String>(languageTable.keySet());
+	}
+
+	/**
+	 * Returns the description of the language or null, if it is not listed
+	 */
+	public String getLanguageDescription(String languageID) {
+		return languageTable.get(languageID);
+	}
+
+	/**
+	 * Returns the list of all string ids. This reads all entries.
+	 */
+	public HashSet<String> getIDList() {
+		HashSet<String> ids = new HashSet<String>();
+		for (int i = 0; i < entryCount; i++) {
+			ids.add(readString(buffer.getInt(getEntryPosition(i))));
+		}
+		return ids;
+	}
+
+	/**
+	 * @return The id of the table this snapshot was created from
+	 */
+	public String getTableID() {
+		return id;
+	}
+
+	/**
+	 * @return The description of the table this snapshot was created from
+	 */
+	public String getTableDescription() {
+		return description;
+	}
+
+	/**
+	 * Reads the complete snapshot into a new PolyglotStringTable, which uses
+	 * the default resource reference
+	 */
+	public PolyglotStringTable toTable() {
+		PolyglotStringTable table = new PolyglotStringTable(id, description);
+		for (String lid : languageTable.keySet()) {
+			table.storeLanguage(lid, languageTable.get(lid));
+		}
+		String[] slotLanguages = new String[languageCount];
+		for (String lid : languageSlots.keySet()) {
+			slotLanguages[languageSlots.get(lid)] = lid;
+		}
+		for (int i = 0; i < entryCount; i++) {
+			int pos = getEntryPosition(i);
+			String sid = readString(buffer.getInt(pos));
+			table.storeStringID(sid);
+			String group = readString(buffer.getInt(pos + 4));
+			if (group != null)
+				table.storeGroupID(sid, group);
+			for (int j = 0; j < languageCount; j++) {
+				String variant = readString(buffer.getInt(pos + 8 + 4 * j));
+				if (variant != null)
+					table.putVariant(sid, slotLanguages[j], variant);
+			}
+		}
+		return table;
+	}
+
+	// INTERNAL READ METHODS ****************************
+	// **************************************************
+
+	/**
+	 * Returns the pool reference of the variant or -1, if it doesn't exist
+	 */
+	private int getVariantRef(String stringID, String languageID) {
+		Integer slot = languageSlots.get(languageID);
+		if (slot == null)
+			return -1;
+		int entry = findEntry(stringID);
+		if (entry < 0)
+			return -1;
+		return buffer.getInt(getEntryPosition(entry) + 8 + 4 * slot);
+	}
+
+	/**
+	 * Returns the number of the entry for this string id or -1, if it doesn't
+	 * exist
+	 */
+	private int findEntry(String stringID) {
+		if (stringID == null || hashSize == 0)
+			return -1;
+		byte[] key = stringID.getBytes(utf8);
+		int bucket = stringID.hashCode() & (hashSize - 1);
+		while (true) {
+			int entry = buffer.getInt(hashOffset + 4 * bucket);
+			if (entry < 0)
+				return -1;
+			if (equalsString(buffer.getInt(getEntryPosition(entry)), key))
+				return entry;
+			bucket = (bucket + 1) & (hashSize - 1);
+		}
+	}
+
+	// Returns the position of an entry in the buffer
+	private int getEntryPosition(int entry) {
+		return entryOffset + entry * (8 + 4 * languageCount);
+	}
+
+	// Reads the string with the given pool reference. Returns null for -1
+	private String readString(int ref) {
+		if (ref < 0)
+			return null;
+		int length = buffer.getInt(poolOffset + ref);
+		byte[] bytes = new byte[length];
+		ByteBuffer b = buffer.duplicate();
+		b.position(poolOffset + ref + 4);
+		b.get(bytes);
+		return new String(bytes, utf8);
+	}
+
+	// Compares the string with the given pool reference to the UTF-8 bytes
+	private boolean equalsString(int ref, byte[] key) {
+		int pos = poolOffset + ref;
+		if (buffer.getInt(pos) != key.length)
+			return false;
+		pos += 4;
+		for (int i = 0; i < key.length; i++) {
+			if (buffer.get(pos + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	// WRITING SNAPSHOTS ********************************
+	// **************************************************
+
+	/**
+	 * Writes a snapshot of the table into the specified file. The snapshot is
+	 * written to a temporary file first, which then replaces f.
+	 *
+	 * @throws IOException
+	 *             - if an I/O-error occurs while writing
+	 */
+	public static void write(PolyglotStringTable table, File f)
+			throws IOException {
+		// Collect languages: listed ones first, then those only used
+		ArrayList<String> languages = new ArrayList<String>(table
+				.getLanguageList());
+		for (String lid : table.getUsedLanguages()) {
+			if (!table.containsLanguage(lid))
+				languages.add(lid);
+		}
+		ArrayList<String> ids = new ArrayList<String>(table.getIDList());
+		int languageCount = languages.size();
+		int entryCount = ids.size();
+		int hashSize = 1;
+		while (hashSize < 2 * entryCount)
+			hashSize <<= 1;
+		if (entryCount == 0)
+			hashSize = 0;
+
+		// Assign pool references and fill entries
+		StringPool pool = new StringPool();
+		int tableIDRef = pool.add(table.getTableID());
+		int descRef = pool.add(table.getTableDescription());
+		int[] languageRefs = new int[2 * languageCount];
+		for (int i = 0; i < languageCount; i++) {
+			String lid = languages.get(i);
+			languageRefs[2 * i] = pool.add(lid);
+			languageRefs[2 * i + 1] = pool.add(table
+					.getLanguageDescription(lid));
+		}
+		int[] entries = new int[entryCount * (2 + languageCount)];
+		int[] hash = new int[hashSize];
+		Arrays.fill(hash, -1);
+		for (int e = 0; e < entryCount; e++) {
+			String sid = ids.get(e);
+			int pos = e * (2 + languageCount);
+			entries[pos] = pool.add(sid);
+			entries[pos + 1] = pool.add(table.getGroupID(sid));
+			for (int i = 0; i < languageCount; i++) {
+				entries[pos + 2 + i] = pool.add(table.getUnformattedString(
+						sid, languages.get(i)));
+			}
+			int bucket = sid.hashCode() & (hashSize - 1);
+			while (hash[bucket] >= 0)
+				bucket = (bucket + 1) & (hashSize - 1);
+			hash[bucket] = e;
+		}
+
+		// Compute section offsets
+		long languageOffset = headerSize;
+		long hashOffset = languageOffset + 8L * languageCount;
+		long entryOffset = hashOffset + 4L * hashSize;
+		long poolOffset = entryOffset + 4L * entries.length;
+		if (poolOffset + pool.size > Integer.MAX_VALUE)
+			throw new IOException("Table too large for a snapshot");
+
+		// Write
+		File temp = XMLToolbox.createTemporarySibling(f);
+		try {
+			FileOutputStream fos = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(fos, 1 << 16));
+			try {
+				out.writeInt(magic);
+				out.writeInt(version);
+				out.writeInt(tableIDRef);
+				out.writeInt(descRef);
+				out.writeInt(languageCount);
+				out.writeInt(entryCount);
+				out.writeInt(hashSize);
+				out.writeInt((int) languageOffset);
+				out.writeInt((int) hashOffset);
+				out.writeInt((int) entryOffset);
+				out.writeInt((int) poolOffset);
+				for (int ref : languageRefs)
+					out.writeInt(ref);
+				for (int entry : hash)
+					out.writeInt(entry);
+				for (int ref : entries)
+					out.writeInt(ref);
+				for (byte[] bytes : pool.strings) {
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				out.close();
+			}
+			XMLToolbox.replaceFile(temp, f);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Collects the strings of a snapshot and assigns their references
+	 */
+	private static class StringPool {
+		HashMap<String, Integer> refs = new HashMap<String, Integer>();
+		ArrayList<byte[]> strings = new ArrayList<byte[]>();
+		long size = 0;
+
+		// Returns the reference of the string, -1 for null
+		int add(String s) throws IOException {
+			if (s == null)
+				return -1;
+			Integer ref = refs.get(s);
+			if (ref == null) {
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("Table too large for a snapshot");
+				byte[] bytes = s.getBytes(utf8);
+				ref = (int) size;
+				refs.put(s, ref);
+				strings.add(bytes);
+				size += 4 + bytes.length;
+			}
+			return ref;
+		}
+	}
+
+}
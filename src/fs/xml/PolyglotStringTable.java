@@ -5,6 +5,9 @@ import org.dom4j.tree.*;
 
 import java.util.*;
 import java.io.*;
+import java.nio.charset.Charset;
+
+import javax.xml.stream.*;
 
 /**
  * Implements a table of strings, each identified by unique String ID and
@@ -21,8 +24,10 @@ import java.io.*;
  * the group id indicates a subgrouping. Formatted strings with placeholder
  * arguments are supported. <br>
  * The input/output format is XML. The format is strict and described under
- * "schema/PolyglotStringTable.xsd". Internally the tables will be saved in
- * HashMaps, for performance reasons. Input/output operations are performed via
+ * "schema/PolyglotStringTable.xsd". Internally language ids are interned to
+ * integer slots and the variants of each string are kept in a dense array
+ * indexed by these slots, so that large tables don't pay for one map per
+ * string. Group ids are interned as well. Input/output operations are performed via
  * the XMLConfigurable interface. The method configure() however, does not
  * implement a simple loading mechanism, but <i>adds</i> content to the existing
  * table.<br>
@@ -42,20 +47,19 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	private String description = "";
 	private String id = "";
 
-	// HashMap mapping language id to language description
-	private HashMap<String, String> languageTable = new HashMap<String, String>();
-
-	// HashMap mapping string id to a mapping of language id to output string
-	private HashMap<String, HashMap<String, String>> stringTable = new HashMap<String, HashMap<String, String>>();
+	// The content of the table. It may be shared with clones of this table
+	// and is copied before it is changed (see writable())
+	private Storage data = new Storage();
 
-	// HashMap mapping string id to a group id
-	private HashMap<String, String> grouptable = new HashMap<String, String>();
+	// Shared variant array for strings without variants
+	private final static String[] noVariants = new String[0];
 
 	// The internal resource reference for locating templates and schemas
 	private ResourceReference resourceRef;
 
-	// The default table for all internal fsframework strings
-	private static PolyglotStringTable fsfwTable = null;
+	// The default table for all internal fsframework strings. It is never
+	// modified after being published, only replaced by a new version
+	private static volatile PolyglotStringTable fsfwTable = null;
 
 	// The global language id for fsframework
 	private static String globalLanguageID = "en";
@@ -65,6 +69,126 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public final static String defaultLanguageID = "en";
 
+	/**
+	 * The content of a table. Tables share their storage with their clones
+	 * until one of them is changed: A shared storage is never changed, but
+	 * copied by the table that wants to change it. Copies share all variant
+	 * and template arrays with the original and only copy those of a string,
+	 * when it is changed for the first time.
+	 */
+	private static class Storage {
+
+		// HashMap mapping language id to language description
+		HashMap<String, String> languageTable;
+
+		// HashMap mapping language id to its slot in the variant arrays. Slots
+		// are never released, so a slot stays valid as long as the table
+		// exists
+		HashMap<String, Integer> languageSlots;
+
+		// The language id of each slot
+		ArrayList<String> slotLanguages;
+
+		// HashMap mapping string id to its variants, indexed by language
+		// slot. An array may be shorter than the number of slots, missing
+		// entries are null
+		HashMap<String, String[]> stringTable;
+
+		// HashMap mapping string id to the compiled format templates of its
+		// variants, indexed by language slot. Only contains string ids with at
+		// least one variant that needs formatting
+		HashMap<String, FormatTemplate[]> templateTable;
+
+		// HashMap mapping string id to a group id
+		HashMap<String, String> grouptable;
+
+		// Pool of group ids, so that all strings of a group share one
+		// instance
+		HashMap<String, String> groupPool;
+
+		// Index of the group hierarchy: Maps each group id with at least one
+		// string in it or in one of its subgroups to its node. The node of
+		// null is the root and contains all strings without group
+		HashMap<String, GroupNode> groupIndex;
+
+		// The number of strings with a variant, indexed by language slot
+		int[] slotSupport;
+
+		// The string ids, which lack a variant in at least one listed
+		// language
+		HashSet<String> incompleteStrings;
+
+		// Whether this storage is used by more than one table
+		volatile boolean shared = false;
+
+		// The string ids whose arrays have been copied for this storage. If
+		// null, all arrays belong to this storage
+		HashSet<String> ownRows = null;
+
+		/**
+		 * Creates an empty storage
+		 */
+		Storage() {
+			languageTable = new HashMap<String, String>();
+			languageSlots = new HashMap<String, Integer>();
+			slotLanguages = new ArrayList<String>();
+			stringTable = new HashMap<String, String[]>();
+			templateTable = new HashMap<String, FormatTemplate[]>();
+			grouptable = new HashMap<String, String>();
+			groupPool = new HashMap<String, String>();
+			groupIndex = new HashMap<String, GroupNode>();
+			groupIndex.put(null, new GroupNode());
+			slotSupport = new int[0];
+			incompleteStrings = new HashSet<String>();
+		}
+
+		/**
+		 * Creates a copy of s, which shares all arrays with s
+		 */
+		Storage(Storage s) {
+			languageTable = new HashMap<String, String>(s.languageTable);
+			languageSlots = new HashMap<String, Integer>(s.languageSlots);
+			slotLanguages = new ArrayList<String>(s.slotLanguages);
+			stringTable = new HashMap<String, String[]>(s.stringTable);
+			templateTable = new HashMap<String, FormatTemplate[]>(s.templateTable);
+			grouptable = new HashMap<String, String>(s.grouptable);
+			groupPool = new HashMap<String, String>(s.groupPool);
+			groupIndex = new HashMap<String, GroupNode>();
+			for (Map.Entry<String, GroupNode> e : s.groupIndex.entrySet())
+				groupIndex.put(e.getKey(), new GroupNode(e.getValue()));
+			slotSupport = s.slotSupport.clone();
+			incompleteStrings = new HashSet<String>(s.incompleteStrings);
+			ownRows = new HashSet<String>();
+		}
+	}
+
+	/**
+	 * A node of the group index
+	 */
+	private static class GroupNode {
+		// The strings directly in this group
+		HashSet<String> members;
+		// The ids of the direct subgroups
+		HashSet<String> children;
+		// The number of strings in this group and all its subgroups
+		int size = 0;
+		// The number of incomplete strings in this group and all its
+		// subgroups
+		int incomplete = 0;
+
+		GroupNode() {
+			members = new HashSet<String>();
+			children = new HashSet<String>();
+		}
+
+		GroupNode(GroupNode n) {
+			members = new HashSet<String>(n.members);
+			children = new HashSet<String>(n.children);
+			size = n.size;
+			incomplete = n.incomplete;
+		}
+	}
+
 	// CONSTRUCTORS **************************************
 	// ***************************************************
 
@@ -102,6 +226,23 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 				.getText();
 	}
 
+	/**
+	 * Reads a PolyglotStringTable from a stream containing an XML document
+	 * conforming to the PolyglotStringTable schema, using the specified
+	 * resource reference for validation and saving it internally as resource
+	 * reference. If r == null, the default reference is used. The document is
+	 * validated while it is read, without building a document tree. The
+	 * stream is not closed.
+	 * 
+	 * @throws XMLWriteConfigurationException
+	 *             - if the stream can't be read or is not valid
+	 */
+	public PolyglotStringTable(InputStream in, ResourceReference r)
+			throws XMLWriteConfigurationException {
+		assignReference(r);
+		readStream(in, this, true);
+	}
+
 	// GETTER METHODS *************************************
 	// ****************************************************
 
@@ -109,7 +250,8 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * Will return the string associated with the specified ID and language,
 	 * with placeholders replaced by appropriate arguments. If the string ID
 	 * does not exist or the string does not exist for the given String and
-	 * Language ID, null is returned.
+	 * Language ID, null is returned. The format of each variant is only
+	 * parsed once, when the variant is inserted.
 	 * 
 	 * @throws java.util.MissingFormatArgumentException
 	 *             - if the arguments provided do not match the string's format
@@ -117,15 +259,20 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public String getString(String stringID, String languageID, Object... args)
 			throws MissingFormatArgumentException {
-		try {
-			String ret = stringTable.get(stringID).get(languageID);
-			if (ret == null)
-				return null;
-			else
-				return String.format(ret, args);
-		} catch (NullPointerException ne) {
+		String ret = getUnformattedString(stringID, languageID);
+		if (ret == null)
 			return null;
-		}
+		// Variants without any specifiers have no template
+		if (ret.indexOf('%') < 0)
+			return ret;
+		FormatTemplate[] templates = data.templateTable.get(stringID);
+		int slot = data.languageSlots.get(languageID);
+		if (templates != null && slot < templates.length
+				&& templates[slot] != null)
+			return templates[slot].format(args);
+		// The variant could not be compiled, so let String.format report
+		// the error
+		return String.format(ret, args);
 	}
 
 	/**
@@ -135,18 +282,30 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * returned.
 	 */
 	public String getUnformattedString(String stringID, String languageID) {
-		try {
-			return stringTable.get(stringID).get(languageID);
-		} catch (NullPointerException ne) {
+		String[] variants = data.stringTable.get(stringID);
+		Integer slot = data.languageSlots.get(languageID);
+		if (variants == null || slot == null || slot >= variants.length)
 			return null;
-		}
+		return variants[slot];
+	}
+
+	/**
+	 * Returns the compiled format template of the variant or null, if the
+	 * variant doesn't exist, has no format specifiers or can't be compiled
+	 */
+	FormatTemplate getTemplate(String stringID, String languageID) {
+		FormatTemplate[] templates = data.templateTable.get(stringID);
+		Integer slot = data.languageSlots.get(languageID);
+		if (templates == null || slot == null || slot >= templates.length)
+			return null;
+		return templates[slot];
 	}
 
 	/**
 	 * Returns the list of languages this table claims to support
 	 */
 	public HashSet<String> getLanguageList() {
-		return new HashSet<String>(languageTable.keySet());
+		return new HashSet<String>(data.languageTable.keySet());
 	}
 
 	/**
@@ -154,8 +313,9 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public HashSet<String> getUsedLanguages() {
 		HashSet<String> used = new HashSet<String>();
-		for (HashMap<String, String> llist : stringTable.values()) {
-			used.addAll(llist.keySet());
+		for (int i = 0; i < data.slotSupport.length; i++) {
+			if (data.slotSupport[i] > 0)
+				used.add(data.slotLanguages.get(i));
 		}
 		return used;
 	}
@@ -166,9 +326,15 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public HashSet<String> getSupportedLanguages(String stringID) {
 		// If the ID doesn't exist, return the empty list
-		if (!stringTable.keySet().contains(stringID))
-			return new HashSet<String>();
-		return new HashSet<String>(stringTable.get(stringID).keySet());
+		HashSet<String> supported = new HashSet<String>();
+		String[] variants = data.stringTable.get(stringID);
+		if (variants == null)
+			return supported;
+		for (int i = 0; i < variants.length; i++) {
+			if (variants[i] != null)
+				supported.add(data.slotLanguages.get(i));
+		}
+		return supported;
 	}
 
 	/**
@@ -176,12 +342,11 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * for which there exists a variant for this language
 	 */
 	public int getSupport(String languageID) {
-		float numberofstrings = stringTable.keySet().size();
+		float numberofstrings = data.stringTable.size();
 		float numberofsupported = 0;
-		for (String sid : stringTable.keySet()) {
-			if (getSupportedLanguages(sid).contains(languageID))
-				numberofsupported++;
-		}
+		Integer slot = data.languageSlots.get(languageID);
+		if (slot != null)
+			numberofsupported = data.slotSupport[slot];
 		return (int) ((numberofsupported * 100) / numberofstrings);
 	}
 
@@ -191,7 +356,7 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * language list, this will still return false)
 	 */
 	public boolean containsLanguage(String languageID) {
-		return languageTable.keySet().contains(languageID);
+		return data.languageTable.keySet().contains(languageID);
 	}
 
 	/**
@@ -199,21 +364,21 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * ID is not in the language list of this table, null is returned.
 	 */
 	public String getLanguageDescription(String languageID) {
-		return languageTable.get(languageID);
+		return data.languageTable.get(languageID);
 	}
 
 	/**
 	 * Returns a list of all String ID's maintained by this table
 	 */
 	public HashSet<String> getIDList() {
-		return new HashSet<String>(stringTable.keySet());
+		return new HashSet<String>(data.stringTable.keySet());
 	}
 
 	/**
 	 * Returns whether stringID exists in this table
 	 */
 	public boolean containsStringID(String stringID) {
-		return stringTable.keySet().contains(stringID);
+		return data.stringTable.keySet().contains(stringID);
 	}
 
 	/**
@@ -221,11 +386,9 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * for each <i>listed</i> language id.
 	 */
 	public boolean isCompleteString(String stringID) {
-		for (String lid : getLanguageList()) {
-			if (getUnformattedString(stringID, lid) == null)
-				return false;
-		}
-		return true;
+		if (data.stringTable.containsKey(stringID))
+			return !data.incompleteStrings.contains(stringID);
+		return data.languageTable.isEmpty();
 	}
 
 	/**
@@ -254,8 +417,9 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public HashMap<String, HashSet<String>> getMissingStrings() {
 		HashMap<String, HashSet<String>> ret = new HashMap<String, HashSet<String>>();
-		for (String i : getIDList()) {
-			for (String l : getLanguageList()) {
+		// Only incomplete strings can miss a variant
+		for (String i : data.incompleteStrings) {
+			for (String l : data.languageTable.keySet()) {
 				if (getUnformattedString(i, l) == null) {
 					// If the stringID is not yet present in the list, add it
 					if (!ret.keySet().contains(i)) {
@@ -278,8 +442,8 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * null, if the string has no associated group
 	 */
 	public String getGroupID(String stringID) {
-		if (grouptable.containsKey(stringID))
-			return grouptable.get(stringID);
+		if (data.grouptable.containsKey(stringID))
+			return data.grouptable.get(stringID);
 		else
 			return null;
 	}
@@ -288,7 +452,33 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * @return A list of all group id's in use
 	 */
 	public HashSet<String> getGroupList() {
-		return new HashSet<String>(grouptable.values());
+		HashSet<String> groups = new HashSet<String>();
+		for (Map.Entry<String, GroupNode> e : data.groupIndex.entrySet()) {
+			if (e.getKey() != null && !e.getValue().members.isEmpty())
+				groups.add(e.getKey());
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns true, if there are strings in this group or one of its
+	 * subgroups (for groupID == null, this is always true)
+	 */
+	public boolean containsGroup(String groupID) {
+		return data.groupIndex.containsKey(groupID);
+	}
+
+	/**
+	 * Returns the ids of all direct subgroups of this group, which contain
+	 * strings or have subgroups containing strings (if group == null, this
+	 * returns the highest order groups). A direct subgroup of a group g is
+	 * of the form g + "." + name, where name contains no point.
+	 */
+	public HashSet<String> getSubgroups(String groupID) {
+		GroupNode node = data.groupIndex.get(groupID);
+		if (node == null)
+			return new HashSet<String>();
+		return new HashSet<String>(node.children);
 	}
 
 	/**
@@ -296,40 +486,39 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * strings without a group)
 	 */
 	public HashSet<String> getStringsInGroup(String groupID) {
-		HashSet<String> groups = new HashSet<String>();
-		// If group id is null, return all strings which have no group
-		if (groupID == null) {
-			for (String sid : stringTable.keySet()) {
-				if (getGroupID(sid) == null)
-					groups.add(sid);
-			}
-			return groups;
-		}
+		GroupNode node = data.groupIndex.get(groupID);
 		// If this group id doesn't exist, return the empty list
-		if (!grouptable.values().contains(groupID))
-			return groups;
-		for (String sid : grouptable.keySet()) {
-			if (getGroupID(sid).equals(groupID))
-				groups.add(sid);
-		}
-		return groups;
+		if (node == null)
+			return new HashSet<String>();
+		return new HashSet<String>(node.members);
 	}
 
 	/**
 	 * Returns all strings in this group and its subgroups (if group == null,
-	 * this returns all strings )
+	 * this returns all strings ). The subgroups of a group g are all groups
+	 * starting with g + ".".
 	 */
 	public HashSet<String> getStringsInSubgroups(String groupID) {
-		HashSet<String> groups = new HashSet<String>();
-		// If group id is null, return all strings which have no group
+		// If group id is null, return all strings
 		if (groupID == null) {
-			return new HashSet<String>(stringTable.keySet());
-		}
-		for (String sid : grouptable.keySet()) {
-			if (getGroupID(sid).startsWith(groupID))
-				groups.add(sid);
+			return new HashSet<String>(data.stringTable.keySet());
 		}
-		return groups;
+		HashSet<String> strings = new HashSet<String>();
+		collectStrings(data, groupID, strings);
+		return strings;
+	}
+
+	/**
+	 * Adds all strings in the group and its subgroups to the set
+	 */
+	private static void collectStrings(Storage d, String groupID,
+			HashSet<String> strings) {
+		GroupNode node = d.groupIndex.get(groupID);
+		if (node == null)
+			return;
+		strings.addAll(node.members);
+		for (String child : node.children)
+			collectStrings(d, child, strings);
 	}
 	
 	/**
@@ -337,7 +526,15 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * or the ID does not exist in this table
 	 */
 	public HashMap<String,String> getVariants(String stringID) {
-		return new HashMap<String,String>(stringTable.get(stringID));
+		HashMap<String, String> map = new HashMap<String, String>();
+		String[] variants = data.stringTable.get(stringID);
+		if (variants == null)
+			return map;
+		for (int i = 0; i < variants.length; i++) {
+			if (variants[i] != null)
+				map.put(data.slotLanguages.get(i), variants[i]);
+		}
+		return map;
 	}
 
 	/**
@@ -346,14 +543,8 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * this also returns true for group id's not in this tree)
 	 */
 	public boolean isCompleteGroup(String groupID) {
-		HashSet<String> ingroup = getStringsInSubgroups(groupID);
-		for (String sid : ingroup) {
-			for (String lid : getLanguageList()) {
-				if (getUnformattedString(sid, lid) == null)
-					return false;
-			}
-		}
-		return true;
+		GroupNode node = data.groupIndex.get(groupID);
+		return node == null || node.incomplete == 0;
 	}
 
 	// SETTER METHODS *****************************
@@ -364,8 +555,8 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * contained in the language list of this table, this call is ignored.
 	 */
 	public void setLanguageDescription(String languageID, String description) {
-		if (languageTable.keySet().contains(languageID)) {
-			languageTable.put(languageID, description);
+		if (data.languageTable.keySet().contains(languageID)) {
+			writable().languageTable.put(languageID, description);
 		}
 	}
 
@@ -375,14 +566,18 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * description will simply be set to the new value.
 	 */
 	public void putLanguage(String languageID, String description) {
-		languageTable.put(languageID, description);
+		storeLanguage(languageID, description);
 	}
 
 	/**
 	 * Removes the specified languageID from the list of languages
 	 */
 	public void removeLanguage(String languageID) {
-		languageTable.remove(languageID);
+		Storage d = writable();
+		if (d.languageTable.containsKey(languageID)) {
+			d.languageTable.remove(languageID);
+			updateCompleteness(d);
+		}
 	}
 
 	/**
@@ -390,9 +585,7 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * If the StringID already exists, this call is ignored
 	 */
 	public void addStringID(String stringID) {
-		if (!stringTable.containsKey(stringID)) {
-			stringTable.put(stringID, new HashMap<String, String>());
-		}
+		storeStringID(stringID);
 	}
 
 	/**
@@ -401,8 +594,17 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * are removed as well.
 	 */
 	public void removeID(String stringID) {
-		stringTable.remove(stringID);
-		grouptable.remove(stringID);
+		Storage d = writable();
+		String group = d.grouptable.remove(stringID);
+		String[] variants = d.stringTable.remove(stringID);
+		if (variants != null) {
+			indexRemove(d, stringID, group);
+			d.incompleteStrings.remove(stringID);
+			countSupport(d, variants, -1);
+		}
+		d.templateTable.remove(stringID);
+		if (d.ownRows != null)
+			d.ownRows.remove(stringID);
 	}
 
 	/**
@@ -418,14 +620,8 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	public void putString(String stringID, String languageID, String value) {
 		if (stringID == null || languageID == null)
 			return;
-		if (!stringTable.containsKey(stringID)) {
-			stringTable.put(stringID, new HashMap<String, String>());
-		}
-		if (value == null) {
-			if (stringTable.containsKey(stringID))
-				stringTable.get(stringID).remove(languageID);
-		} else
-			stringTable.get(stringID).put(languageID, value);
+		storeStringID(stringID);
+		putVariant(stringID, languageID, value);
 	}
 
 	/**
@@ -449,21 +645,43 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * If the new id already exists, it is overwritten.
 	 */
 	public void renameString(String oldID, String newID) {
-		if(oldID == null || newID == null) return;
+		if(oldID == null || newID == null || oldID.equals(newID)) return;
 		//Move variants
 		
-		HashMap<String, String> variants = stringTable.get(oldID);
 		//If it doesn't exist, stop
-		if(variants ==  null) return;
-		stringTable.remove(oldID);
-		stringTable.put(newID, variants);
+		if(!data.stringTable.containsKey(oldID)) return;
+		Storage d = writable();
+		indexRemove(d, oldID, d.grouptable.get(oldID));
+		if (d.stringTable.containsKey(newID))
+			indexRemove(d, newID, d.grouptable.get(newID));
+		String[] variants = d.stringTable.remove(oldID);
+		String[] overwritten = d.stringTable.put(newID, variants);
+		if (overwritten != null)
+			countSupport(d, overwritten, -1);
+		if (d.incompleteStrings.remove(oldID))
+			d.incompleteStrings.add(newID);
+		else
+			d.incompleteStrings.remove(newID);
+		FormatTemplate[] templates = d.templateTable.remove(oldID);
+		if (templates != null)
+			d.templateTable.put(newID, templates);
+		else
+			d.templateTable.remove(newID);
+		//The arrays keep their owner
+		if (d.ownRows != null) {
+			if (d.ownRows.remove(oldID))
+				d.ownRows.add(newID);
+			else
+				d.ownRows.remove(newID);
+		}
 		
 		//Change group association
-		String group = grouptable.get(oldID);
+		String group = d.grouptable.get(oldID);
 		if(group != null) {
-			grouptable.remove(oldID);
-			grouptable.put(newID, group);
+			d.grouptable.remove(oldID);
+			d.grouptable.put(newID, group);
 		}
+		indexAdd(d, newID, d.grouptable.get(newID));
 		
 	}
 
@@ -474,9 +692,7 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * @see fs.xml.XMLConfigurable
 	 */
 	public void setTableID(String tableID) {
-		if (tableID != null) {
-			id = tableID;
-		}
+		storeTableID(tableID);
 	}
 
 	/**
@@ -484,7 +700,7 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * are interpreted as empty strings)
 	 */
 	public void setTableDescription(String desc) {
-		description = desc == null ? "" : desc;
+		storeTableDescription(desc);
 	}
 
 	/**
@@ -493,11 +709,289 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 */
 	public void setGroupID(String stringID, String groupID) {
 		if (containsStringID(stringID)) {
-			if(groupID != null) grouptable.put(stringID, groupID);
-			else grouptable.remove(stringID);
+			if(groupID != null) storeGroupID(stringID, groupID);
+			else {
+				Storage d = writable();
+				String group = d.grouptable.remove(stringID);
+				if (group != null) {
+					indexRemove(d, stringID, group);
+					indexAdd(d, stringID, null);
+				}
+			}
+		}
+	}
+
+	// INTERNAL STORAGE ***************************
+	// ********************************************
+
+	/**
+	 * Returns the storage of this table, after making sure it is not shared
+	 * with any other table. This has to be called before each change.
+	 */
+	private Storage writable() {
+		if (data.shared)
+			data = new Storage(data);
+		return data;
+	}
+
+	/**
+	 * Returns the variant array of an existing string id, after making sure
+	 * that it (and the template array) belongs to the storage d.
+	 */
+	private static String[] writableVariants(Storage d, String stringID) {
+		String[] variants = d.stringTable.get(stringID);
+		if (d.ownRows != null && d.ownRows.add(stringID)
+				&& variants.length > 0) {
+			variants = variants.clone();
+			d.stringTable.put(stringID, variants);
+			FormatTemplate[] templates = d.templateTable.get(stringID);
+			if (templates != null)
+				d.templateTable.put(stringID, templates.clone());
+		}
+		return variants;
+	}
+
+	// The following methods change the table without going through the
+	// public (overridable) setters. They are used by the table itself and by
+	// the PolyglotStringTableHandler
+
+	/**
+	 * Sets the table id, if it is not null
+	 */
+	void storeTableID(String tableID) {
+		if (tableID != null)
+			id = tableID;
+	}
+
+	/**
+	 * Sets the description (null is interpreted as the empty string)
+	 */
+	void storeTableDescription(String desc) {
+		description = desc == null ? "" : desc;
+	}
+
+	/**
+	 * Adds the language id with the given description to the language list
+	 */
+	void storeLanguage(String languageID, String description) {
+		Storage d = writable();
+		if (d.languageTable.put(languageID, description) == null
+				&& !d.stringTable.isEmpty())
+			updateCompleteness(d);
+	}
+
+	/**
+	 * Adds the string id without variants, if it doesn't exist yet
+	 */
+	void storeStringID(String stringID) {
+		if (!data.stringTable.containsKey(stringID)) {
+			Storage d = writable();
+			d.stringTable.put(stringID, noVariants);
+			if (!d.languageTable.isEmpty())
+				d.incompleteStrings.add(stringID);
+			indexAdd(d, stringID, null);
 		}
 	}
 
+	/**
+	 * Associates an existing string id to the (non-null) group id
+	 */
+	void storeGroupID(String stringID, String groupID) {
+		Storage d = writable();
+		String group = internGroup(groupID);
+		String previous = d.grouptable.put(stringID, group);
+		if (!group.equals(previous)) {
+			indexRemove(d, stringID, previous);
+			indexAdd(d, stringID, group);
+		}
+	}
+
+	/**
+	 * Adds the string id to the node of the group (null for no group) in the
+	 * group index, creating the nodes of the group and its parent groups if
+	 * necessary
+	 */
+	private static void indexAdd(Storage d, String stringID, String groupID) {
+		if (!getGroupNode(d, groupID).members.add(stringID))
+			return;
+		int incomplete = d.incompleteStrings.contains(stringID) ? 1 : 0;
+		for (String g = groupID;; g = getParentGroup(g)) {
+			GroupNode node = d.groupIndex.get(g);
+			node.size++;
+			node.incomplete += incomplete;
+			if (g == null)
+				break;
+		}
+	}
+
+	/**
+	 * Removes the string id from the node of the group (null for no group)
+	 * in the group index. Nodes of groups, which contain no more strings in
+	 * any subgroup, are removed.
+	 */
+	private static void indexRemove(Storage d, String stringID, String groupID) {
+		GroupNode node = d.groupIndex.get(groupID);
+		if (node == null || !node.members.remove(stringID))
+			return;
+		int incomplete = d.incompleteStrings.contains(stringID) ? 1 : 0;
+		for (String g = groupID;; g = getParentGroup(g)) {
+			node = d.groupIndex.get(g);
+			node.size--;
+			node.incomplete -= incomplete;
+			if (g == null)
+				break;
+			if (node.size == 0) {
+				d.groupIndex.remove(g);
+				d.groupIndex.get(getParentGroup(g)).children.remove(g);
+			}
+		}
+	}
+
+	/**
+	 * Marks the existing string id as complete or incomplete, depending on
+	 * whether its variants cover all listed languages, and updates the
+	 * counters of its group and all parent groups
+	 */
+	private static void updateCompleteness(Storage d, String stringID) {
+		String[] variants = d.stringTable.get(stringID);
+		boolean complete = true;
+		for (String lid : d.languageTable.keySet()) {
+			Integer slot = d.languageSlots.get(lid);
+			if (slot == null || slot >= variants.length
+					|| variants[slot] == null) {
+				complete = false;
+				break;
+			}
+		}
+		boolean changed = complete ? d.incompleteStrings.remove(stringID)
+				: d.incompleteStrings.add(stringID);
+		if (!changed)
+			return;
+		for (String g = d.grouptable.get(stringID);; g = getParentGroup(g)) {
+			d.groupIndex.get(g).incomplete += complete ? -1 : 1;
+			if (g == null)
+				break;
+		}
+	}
+
+	/**
+	 * Updates the completeness of all strings. Called when the language list
+	 * changes
+	 */
+	private static void updateCompleteness(Storage d) {
+		for (String sid : d.stringTable.keySet())
+			updateCompleteness(d, sid);
+	}
+
+	/**
+	 * Adds delta to the support counter of each language slot, in which the
+	 * variant array has a variant
+	 */
+	private static void countSupport(Storage d, String[] variants, int delta) {
+		for (int i = 0; i < variants.length; i++) {
+			if (variants[i] != null)
+				d.slotSupport[i] += delta;
+		}
+	}
+
+	/**
+	 * Returns the node of the group in the group index, creating it and the
+	 * nodes of all its parent groups if necessary
+	 */
+	private static GroupNode getGroupNode(Storage d, String groupID) {
+		GroupNode node = d.groupIndex.get(groupID);
+		if (node == null) {
+			node = new GroupNode();
+			d.groupIndex.put(groupID, node);
+			getGroupNode(d, getParentGroup(groupID)).children.add(groupID);
+		}
+		return node;
+	}
+
+
+	/**
+	 * Returns the slot of the specified language id. If create is true, a new
+	 * slot is assigned to language ids that don't have one yet. Otherwise
+	 * null is returned for those.
+	 */
+	private Integer getLanguageSlot(String languageID, boolean create) {
+		Integer slot = data.languageSlots.get(languageID);
+		if (slot == null && create) {
+			slot = data.slotLanguages.size();
+			data.slotLanguages.add(languageID);
+			data.languageSlots.put(languageID, slot);
+			data.slotSupport = Arrays.copyOf(data.slotSupport, slot + 1);
+		}
+		return slot;
+	}
+
+	/**
+	 * Sets the variant of an existing string id in the given language. If
+	 * value == null, the variant is removed. Variant arrays are only grown as
+	 * far as the slot requires. The format template of the variant is
+	 * compiled or discarded accordingly.
+	 */
+	void putVariant(String stringID, String languageID, String value) {
+		String[] variants = writableVariants(writable(), stringID);
+		Integer slot = getLanguageSlot(languageID, value != null);
+		if (slot == null)
+			return;
+		if (slot >= variants.length) {
+			if (value == null)
+				return;
+			variants = Arrays.copyOf(variants, slot + 1);
+			data.stringTable.put(stringID, variants);
+		}
+		if (variants[slot] == null) {
+			if (value == null)
+				return;
+			data.slotSupport[slot]++;
+		} else if (value == null)
+			data.slotSupport[slot]--;
+		variants[slot] = value;
+		putTemplate(stringID, slot, FormatTemplate.compile(value));
+		updateCompleteness(data, stringID);
+	}
+
+	/**
+	 * Stores the format template of a variant. Template arrays are removed as
+	 * soon as they don't contain any templates anymore
+	 */
+	private void putTemplate(String stringID, int slot, FormatTemplate template) {
+		FormatTemplate[] templates = data.templateTable.get(stringID);
+		if (templates == null) {
+			if (template == null)
+				return;
+			templates = new FormatTemplate[slot + 1];
+			data.templateTable.put(stringID, templates);
+		} else if (slot >= templates.length) {
+			if (template == null)
+				return;
+			templates = Arrays.copyOf(templates, slot + 1);
+			data.templateTable.put(stringID, templates);
+		}
+		templates[slot] = template;
+		if (template == null) {
+			for (FormatTemplate t : templates) {
+				if (t != null)
+					return;
+			}
+			data.templateTable.remove(stringID);
+		}
+	}
+
+	/**
+	 * Returns the pooled instance of the group id
+	 */
+	private String internGroup(String groupID) {
+		String pooled = data.groupPool.get(groupID);
+		if (pooled == null) {
+			data.groupPool.put(groupID, groupID);
+			pooled = groupID;
+		}
+		return pooled;
+	}
+
 	// INTERFACE METHODS *************************
 	// *******************************************
 
@@ -568,7 +1062,7 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 				Node lang = (Node) o;
 				String lid = lang.selectSingleNode("./id").getText();
 				String ldesc = lang.selectSingleNode("./description").getText();
-				languageTable.put(lid, ldesc);
+				storeLanguage(lid, ldesc);
 			}
 			// Check out string table
 			List<Node> m = n.selectNodes("./polyglotstring");
@@ -576,16 +1070,14 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 				Node pstring = (Node) o;
 				String pid = pstring.valueOf("./@id");
 				// If this ID does not yet exist, add it
-				if (!stringTable.containsKey(pid)) {
-					stringTable.put(pid, new HashMap<String, String>());
-				}
+				storeStringID(pid);
 				List<Node> variants = pstring.selectNodes("./variant");
 				// Read out each variant
 				for (Object v : variants) {
 					Node avariant = (Node) v;
 					String lid = avariant.valueOf("./@lang");
 					String vstring = avariant.getText();
-					stringTable.get(pid).put(lid, vstring);
+					putVariant(pid, lid, vstring);
 				}
 			}
 			// Check out groups
@@ -603,6 +1095,57 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 
 	}
 
+	/**
+	 * Reads a stream containing an XML document conforming to the
+	 * PolyglotStringTable schema and changes the table's content in exactly
+	 * the same way as configure(Node) does. The document is read and
+	 * validated in a single pass and no document tree is built, so this
+	 * should be preferred for large tables. The table is only changed, if the
+	 * whole document is valid. The stream is not closed.
+	 * 
+	 * @throws XMLWriteConfigurationException
+	 *             - if the stream can't be read or is not valid
+	 */
+	public void configure(InputStream in) throws XMLWriteConfigurationException {
+		// Validation errors may only show up at the end of the document, so
+		// read into a separate table first
+		PolyglotStringTable update = new PolyglotStringTable("", "");
+		readStream(in, update, false);
+		for (String lid : update.data.languageTable.keySet()) {
+			storeLanguage(lid, update.data.languageTable.get(lid));
+		}
+		for (String sid : update.data.stringTable.keySet()) {
+			storeStringID(sid);
+			String[] variants = update.data.stringTable.get(sid);
+			for (int i = 0; i < variants.length; i++) {
+				if (variants[i] != null)
+					putVariant(sid, update.data.slotLanguages.get(i), variants[i]);
+			}
+			String group = update.data.grouptable.get(sid);
+			if (group != null)
+				storeGroupID(sid, group);
+		}
+	}
+
+	/**
+	 * Fills the target table from the XML stream via a
+	 * PolyglotStringTableHandler, validating it against the schema found via
+	 * the resource reference of this table. If readHeader is true, table id
+	 * and description are read as well.
+	 */
+	private void readStream(InputStream in, PolyglotStringTable target,
+			boolean readHeader) throws XMLWriteConfigurationException {
+		try {
+			XMLToolbox.parseXMLStream(in, new PolyglotStringTableHandler(
+					target, readHeader), XMLToolbox.getSchemaObject(new File(
+					resourceRef.getFullResourcePath(this,
+							"schema/PolyglotStringTable.xsd"))));
+		} catch (Exception e) {
+			throw new XMLWriteConfigurationException("Can't read table: "
+					+ e.getMessage());
+		}
+	}
+
 	/**
 	 * Returns the root element of a tree that forms an XML document conforming
 	 * to the PolyglotStringTable schema definition that contains all data of
@@ -620,28 +1163,31 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 		root.addAttribute("xsi:schemaLocation", "http://www.fsmathe.uni-kl.de/fsframework ../schema/PolyglotStringTable.xsd" );
 		//Add language table
 		Element langtab = new DefaultElement("languagetable");
-		for (String lang : languageTable.keySet()) {
+		for (String lang : data.languageTable.keySet()) {
 			DefaultElement l = new DefaultElement("language");
 			DefaultElement lid = new DefaultElement("id");
 			DefaultElement ldesc = new DefaultElement("description");
 			lid.setText(lang);
-			ldesc.setText(languageTable.get(lang));
+			ldesc.setText(data.languageTable.get(lang));
 			l.add(lid);
 			l.add(ldesc);
 			langtab.add(l);
 		}
 		root.add(langtab);
 		// Add all strings
-		for (String sid : stringTable.keySet()) {
+		for (String sid : data.stringTable.keySet()) {
 			DefaultElement p = new DefaultElement("polyglotstring");
 			p.addAttribute("id", sid);
-			if (grouptable.containsKey(sid))
+			if (data.grouptable.containsKey(sid))
 				p.addAttribute("group", getGroupID(sid));
 			// Add all variants
-			for (String lid : stringTable.get(sid).keySet()) {
+			String[] variants = data.stringTable.get(sid);
+			for (int i = 0; i < variants.length; i++) {
+				if (variants[i] == null)
+					continue;
 				DefaultElement v = new DefaultElement("variant");
-				v.addAttribute("lang", lid);
-				v.setText(stringTable.get(sid).get(lid));
+				v.addAttribute("lang", data.slotLanguages.get(i));
+				v.setText(variants[i]);
 				p.add(v);
 			}
 			root.add(p);
@@ -650,6 +1196,111 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 		return root;
 	}
 
+	/**
+	 * Writes an XML document conforming to the PolyglotStringTable schema
+	 * definition that contains all data of this string table, i.e. the same
+	 * document as described by getConfiguration(). The document is written
+	 * directly to the writer, without building a tree first. Text content is
+	 * written exactly as it is. The writer is flushed, but not closed.
+	 * 
+	 * @throws IOException
+	 *             - if an I/O-error occurs while writing
+	 */
+	public void writeConfiguration(Writer out) throws IOException {
+		try {
+			XMLStreamWriter w = XMLOutputFactory.newInstance()
+					.createXMLStreamWriter(out);
+			w.writeStartDocument("UTF-8", "1.0");
+			w.writeCharacters("\n\n");
+			w.writeStartElement("fsfw:polyglotstringtable");
+			w.writeAttribute("id", id);
+			w.writeAttribute("xmlns:fsfw", "http://www.fsmathe.uni-kl.de/fsframework");
+			w.writeAttribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+			w.writeAttribute("xsi:schemaLocation", "http://www.fsmathe.uni-kl.de/fsframework ../schema/PolyglotStringTable.xsd");
+			writeTextElement(w, 1, "description", description);
+			// Language table
+			w.writeCharacters("\n  ");
+			w.writeStartElement("languagetable");
+			for (String lang : data.languageTable.keySet()) {
+				w.writeCharacters("\n    ");
+				w.writeStartElement("language");
+				writeTextElement(w, 3, "id", lang);
+				writeTextElement(w, 3, "description", data.languageTable.get(lang));
+				w.writeCharacters("\n    ");
+				w.writeEndElement();
+			}
+			w.writeCharacters("\n  ");
+			w.writeEndElement();
+			// All strings
+			for (String sid : data.stringTable.keySet()) {
+				w.writeCharacters("\n  ");
+				w.writeStartElement("polyglotstring");
+				w.writeAttribute("id", sid);
+				if (data.grouptable.containsKey(sid))
+					w.writeAttribute("group", getGroupID(sid));
+				String[] variants = data.stringTable.get(sid);
+				for (int i = 0; i < variants.length; i++) {
+					if (variants[i] == null)
+						continue;
+					w.writeCharacters("\n    ");
+					w.writeStartElement("variant");
+					w.writeAttribute("lang", data.slotLanguages.get(i));
+					w.writeCharacters(variants[i]);
+					w.writeEndElement();
+				}
+				w.writeCharacters("\n  ");
+				w.writeEndElement();
+			}
+			w.writeCharacters("\n");
+			w.writeEndElement();
+			w.writeCharacters("\n");
+			w.writeEndDocument();
+			w.flush();
+		} catch (XMLStreamException xe) {
+			throw new IOException("Can't write table: " + xe.getMessage());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Saves this table as UTF-8 encoded XML document in the specified file
+	 * (via writeConfiguration(Writer)). The table is written to a temporary
+	 * file in the same directory first, which then replaces f, so that an
+	 * existing file is never left half-written.
+	 * 
+	 * @throws IOException
+	 *             - if an I/O-error occurs while saving
+	 */
+	public void saveTable(File f) throws IOException {
+		File temp = XMLToolbox.createTemporarySibling(f);
+		try {
+			FileOutputStream fos = new FileOutputStream(temp);
+			Writer out = new BufferedWriter(new OutputStreamWriter(fos,
+					Charset.forName("UTF-8")), 1 << 16);
+			try {
+				writeConfiguration(out);
+				fos.getFD().sync();
+			} finally {
+				out.close();
+			}
+			XMLToolbox.replaceFile(temp, f);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	// Writes an element containing only text on a new line with the given
+	// indentation level
+	private static void writeTextElement(XMLStreamWriter w, int level,
+			String name, String text) throws XMLStreamException {
+		w.writeCharacters("\n");
+		for (int i = 0; i < level; i++)
+			w.writeCharacters("  ");
+		w.writeStartElement(name);
+		w.writeCharacters(text);
+		w.writeEndElement();
+	}
+
 	/**
 	 * Returns the tables id
 	 */
@@ -668,22 +1319,17 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	// ********************************************
 
 	/**
-	 * Returns a deep copy of the string table. Since the resource reference
-	 * cannot be deep-cloned, it is simply copied.
+	 * Returns a copy of the string table, including languages, strings and
+	 * groups. The copy is made in constant time: Both tables share their
+	 * content until one of them is changed, which then copies the content it
+	 * changes. Since the resource reference cannot be deep-cloned, it is
+	 * simply copied.
 	 */
 	@Override
 	public PolyglotStringTable clone() {
 		PolyglotStringTable clone = new PolyglotStringTable(id, description);
-		// Copy language list
-		for (String lid : languageTable.keySet()) {
-			clone.putLanguage(lid, languageTable.get(lid));
-		}
-		// Copy string list
-		for (String sid : stringTable.keySet()) {
-			for (String lang : stringTable.get(sid).keySet()) {
-				clone.putString(sid, lang, stringTable.get(sid).get(lang));
-			}
-		}
+		data.shared = true;
+		clone.data = data;
 		// Copy resource reference
 		clone.assignReference(resourceRef);
 		return clone;
@@ -750,6 +1396,18 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 				+ extractHighestGroup(groupID.substring(prefix.length() + 1));
 	}
 
+	/**
+	 * @return - null, if groupID == null or contains no "." <br>
+	 *         - The prefix of groupID up to and not including the last
+	 *         occurence of "." (i.e. the direct parent group)
+	 */
+	public static String getParentGroup(String groupID) {
+		if (groupID == null)
+			return null;
+		int i = groupID.lastIndexOf('.');
+		return i < 0 ? null : groupID.substring(0, i);
+	}
+
 	/**
 	 * @return - null, if groupID == null <br>
 	 *         - The prefix of groupID up to and not including the first
@@ -770,7 +1428,9 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * reference specified. If r is null, the default reference will be used.
 	 * This will load a new copy from the XML file each time the mehtod is
 	 * called. If you want to load a cached version, call getFsfwTable(), which
-	 * returns the last version loaded.
+	 * returns the last version loaded. The cached version is replaced
+	 * atomically, so this may be called while other threads use
+	 * getFsfwTable().
 	 * 
 	 * @throws XMLWriteConfigurationException
 	 *             - if any error occured during document loading
@@ -779,15 +1439,23 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 			throws XMLWriteConfigurationException {
 		r = (r == null) ? FsfwDefaultReference.getDefaultReference() : r;
 		try {
-			fsfwTable = new PolyglotStringTable(XMLToolbox
-					.loadXMLFile(new File(r.getFullResourcePath(null,
-							"language/fsfwStringTable.xml"))), r);
-		} catch (DocumentException de) {
+			InputStream in = new FileInputStream(r.getFullResourcePath(null,
+					"language/fsfwStringTable.xml"));
+			PolyglotStringTable table;
+			try {
+				table = new PolyglotStringTable(in, r);
+			} finally {
+				in.close();
+			}
+			// Publish the complete table, so concurrent readers either see
+			// the old or the new version
+			fsfwTable = table;
+			return table.clone();
+		} catch (IOException ie) {
 			throw new XMLWriteConfigurationException(
-					"Can't initialize fsframework string table. XML file seems to be invalid: "
-							+ de.getMessage());
+					"Can't initialize fsframework string table. XML file can't be read: "
+							+ ie.getMessage());
 		}
-		return fsfwTable;
 	}
 
 	/**
@@ -798,8 +1466,9 @@ public class PolyglotStringTable implements ResourceDependent, XMLConfigurable {
 	 * returned.
 	 */
 	public static PolyglotStringTable getFsfwTable() {
-		if (fsfwTable != null)
-			return fsfwTable.clone();
+		PolyglotStringTable table = fsfwTable;
+		if (table != null)
+			return table.clone();
 		else {
 			try {
 				return loadFsfwTable(FsfwDefaultReference.getDefaultReference());
@@ -0,0 +1,152 @@
+package fs.xml;
+
+import org.xml.sax.*;
+import org.xml.sax.helpers.*;
+
+/**
+ * A SAX content handler, which reads a document conforming to the
+ * PolyglotStringTable schema definition and writes its content directly into
+ * a PolyglotStringTable, without building a document tree. The table is
+ * changed in exactly the same way as by PolyglotStringTable.configure(Node).
+ * If the handler is told to read the header, the table id and description are
+ * set as well. <br>
+ * The handler only checks the structure as far as it needs to understand the
+ * document, so it should be combined with schema validation.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class PolyglotStringTableHandler extends DefaultHandler {
+
+	// The table to fill
+	private PolyglotStringTable table;
+
+	// Whether table id and description should be read
+	private boolean readHeader;
+
+	// The current nesting depth (the root element has depth 1)
+	private int depth = 0;
+
+	// Whether the current element is within languagetable/language
+	private boolean inLanguage = false;
+
+	// The id of the polyglotstring currently read or null
+	private String stringID = null;
+
+	// The lang attribute of the variant currently read or null
+	private String variantLanguage = null;
+
+	// The id and description of the language currently read
+	private String languageID = null;
+	private String languageDescription = null;
+
+	// Collects the text of the current element, null if text is ignored
+	private StringBuilder text = null;
+
+	// CONSTRUCTOR **************************************
+	// **************************************************
+
+	/**
+	 * Creates a handler writing into the specified table. If readHeader is
+	 * true, the table id and description are overwritten by those of the
+	 * document
+	 */
+	public PolyglotStringTableHandler(PolyglotStringTable table,
+			boolean readHeader) {
+		this.table = table;
+		this.readHeader = readHeader;
+	}
+
+	// CONTENT HANDLER METHODS **************************
+	// **************************************************
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+		depth++;
+		String name = localName == null || localName.length() == 0 ? qName
+				: localName;
+		switch (depth) {
+		case 1:
+			if (!"polyglotstringtable".equals(name))
+				throw new SAXException("Not a polyglot string table: " + qName);
+			if (readHeader)
+				table.storeTableID(attributes.getValue("id"));
+			break;
+		case 2:
+			if ("description".equals(name)) {
+				if (readHeader)
+					text = new StringBuilder();
+			} else if ("polyglotstring".equals(name)) {
+				stringID = attributes.getValue("id");
+				if (stringID == null)
+					throw new SAXException("Polyglotstring without id");
+				table.storeStringID(stringID);
+				String group = attributes.getValue("group");
+				if (group != null)
+					table.storeGroupID(stringID, group);
+			}
+			break;
+		case 3:
+			if (stringID != null && "variant".equals(name)) {
+				variantLanguage = attributes.getValue("lang");
+				if (variantLanguage == null)
+					throw new SAXException("Variant without language in "
+							+ stringID);
+				text = new StringBuilder();
+			} else if (stringID == null && "language".equals(name)) {
+				inLanguage = true;
+				languageID = null;
+				languageDescription = null;
+			}
+			break;
+		case 4:
+			if (inLanguage
+					&& ("id".equals(name) || "description".equals(name)))
+				text = new StringBuilder();
+			break;
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		if (text != null)
+			text.append(ch, start, length);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		String name = localName == null || localName.length() == 0 ? qName
+				: localName;
+		switch (depth) {
+		case 2:
+			if (text != null && "description".equals(name))
+				table.storeTableDescription(text.toString());
+			stringID = null;
+			break;
+		case 3:
+			if (variantLanguage != null) {
+				table.putVariant(stringID, variantLanguage, text.toString());
+				variantLanguage = null;
+			} else if (inLanguage) {
+				if (languageID == null || languageDescription == null)
+					throw new SAXException("Incomplete language entry");
+				table.storeLanguage(languageID, languageDescription);
+				inLanguage = false;
+			}
+			break;
+		case 4:
+			if (inLanguage && text != null) {
+				if ("id".equals(name))
+					languageID = text.toString();
+				else
+					languageDescription = text.toString();
+			}
+			break;
+		}
+		text = null;
+		depth--;
+	}
+
+}
@@ -4,7 +4,10 @@ import org.dom4j.*;
 import org.dom4j.tree.*;
 
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A ResourceDirectory is used to summarize several ResourceDependent objects
@@ -16,7 +19,10 @@ import java.util.*;
  * all objects at once. Write/Read permissions are not verified. <br>
  * Since ResourceDirectory implements ResourceDependent, itself can be
  * registered at a ResourceDirectory or a similar object to realise multi-level
- * grouping of resources.
+ * grouping of resources. <br>
+ * The expected resource structures of all registered objects are cached and
+ * only retrieved again, if an object is added or removed (here or in a
+ * registered ResourceDirectory) or invalidateStructure() is called.
  * 
  * @author Simon Hampe
  * 
@@ -33,6 +39,23 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 */
 	private HashSet<ResourceDependent> registered = new HashSet<ResourceDependent>();
 
+	// The cached resource structure of each registered object
+	private HashMap<ResourceDependent, Document> structures = new HashMap<ResourceDependent, Document>();
+
+	// The cached merged resource structure or null
+	private Document mergedStructure = null;
+
+	// Source of the modification stamps of all directories. Each stamp is
+	// larger than all stamps given before.
+	private final static AtomicLong stampCounter = new AtomicLong();
+
+	// The stamp of the last change of the set of registered objects
+	private long modificationStamp = stampCounter.incrementAndGet();
+
+	// The structure version (see getStructureVersion()) of the cached
+	// structures
+	private long cachedVersion = -1;
+
 	// CONSTRUCTORS *********************************
 
 	/**
@@ -65,7 +88,8 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 */
 	public void addResourceDependent(ResourceDependent o) {
 		if (o != null && o != this) {
-			registered.add(o);
+			if (registered.add(o))
+				invalidateStructure();
 		}
 	}
 
@@ -74,13 +98,26 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 * if included in this list (If not, this call is ignored).
 	 */
 	public void removeResourceDependent(ResourceDependent o) {
-		registered.remove(o);
+		if (registered.remove(o))
+			invalidateStructure();
+	}
+
+	/**
+	 * Discards the cached resource structures, so that they are retrieved again
+	 * from all registered objects when they are needed next. This has to be
+	 * called, if the expected resource structure of a registered object
+	 * changes.
+	 */
+	public void invalidateStructure() {
+		modificationStamp = stampCounter.incrementAndGet();
 	}
 
 	// VERIFICATION ****************************
 
 	/**
-	 * Verifies that the requirements of all registered objects are fulfilled
+	 * Verifies that the requirements of all registered objects are fulfilled.
+	 * The file system is read once, only descending into directories which are
+	 * part of the expected resource structure.
 	 * 
 	 * @throws FileNotFoundException
 	 *             - if any of the requirements are not fulfilled. A detailed
@@ -91,13 +128,18 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 		StringBuilder errorreport = new StringBuilder(
 				"Verification error report: \n");
 		boolean erroroccured = false;
+		updateStructures();
+		FileSnapshot snapshot = new FileSnapshot(mergedStructure
+				.getRootElement());
 		// Verification is done object-wise instead of for the global
 		// resource structure, so error messages can be given in a
 		// detailed manner
 		for (ResourceDependent rd : registered) {
+			Document structure = structures.get(rd);
+			if (structure == null || structure.getRootElement() == null)
+				continue;
 			try {
-				Document structure = rd.getExpectedResourceStructure();
-				verifyNode(structure.getRootElement(), null);
+				verifyNode(structure.getRootElement(), null, snapshot);
 			} catch (FileNotFoundException fe) {
 				erroroccured = true;
 				errorreport.append("Verification error for object " + rd
@@ -151,16 +193,143 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 *      being used to merge the different resource structures.
 	 */
 	public Document getExpectedResourceStructure() {
-		DefaultDocument ret = new DefaultDocument();
+		updateStructures();
+		// Return a copy, so that the cached structure can't be modified
+		return (Document) mergedStructure.clone();
+	}
+
+	// CACHING ****************************************
+
+	/**
+	 * @return The latest modification stamp of this directory and all
+	 *         registered directories. Since each change takes a new, larger
+	 *         stamp, this number increases each time the set of registered
+	 *         objects of this directory or of any registered directory changes
+	 */
+	private long getStructureVersion() {
+		long version = modificationStamp;
+		for (ResourceDependent rd : registered) {
+			if (rd instanceof ResourceDirectory)
+				version = Math.max(version, ((ResourceDirectory) rd)
+						.getStructureVersion());
+		}
+		return version;
+	}
 
+	/**
+	 * Retrieves the resource structures of all registered objects and merges
+	 * them, if the cached structures are not up to date
+	 */
+	private void updateStructures() {
+		long version = getStructureVersion();
+		if (mergedStructure != null && version == cachedVersion)
+			return;
+		structures.clear();
 		DefaultElement root = new DefaultElement("CommonBaseDirectory");
 		for (ResourceDependent rd : registered) {
-			root = mergeNodes(root, rd.getExpectedResourceStructure()
-					.getRootElement());
+			Document d = rd.getExpectedResourceStructure();
+			structures.put(rd, d);
+			if (d != null && d.getRootElement() != null)
+				mergeNodes(root, d.getRootElement());
 		}
-		ret.setRootElement(root);
+		mergedStructure = new DefaultDocument(root);
+		cachedVersion = version;
+	}
 
-		return ret;
+	/**
+	 * A snapshot of all existing files and directories which are part of an
+	 * expected resource structure. It is created by a single walk through the
+	 * base directory, which only descends into expected directories.
+	 */
+	private class FileSnapshot {
+
+		// All expected directories, which are descended into
+		private HashSet<Path> expectedDirectories = new HashSet<Path>();
+
+		// All files and directories found during the walk
+		private HashSet<Path> existing = new HashSet<Path>();
+
+		/**
+		 * Creates a snapshot for the structure with the given root element
+		 */
+		public FileSnapshot(Element root) {
+			final Path base = toPath(pathref.getFullResourcePath(
+					ResourceDirectory.this, ""));
+			if (base == null)
+				return;
+			collectDirectories(root, "/");
+			try {
+				Files.walkFileTree(base, EnumSet
+						.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+						new SimpleFileVisitor<Path>() {
+							@Override
+							public FileVisitResult preVisitDirectory(Path dir,
+									BasicFileAttributes attrs) {
+								existing.add(dir);
+								return dir.equals(base)
+										|| expectedDirectories.contains(dir) ? FileVisitResult.CONTINUE
+										: FileVisitResult.SKIP_SUBTREE;
+							}
+
+							@Override
+							public FileVisitResult visitFile(Path file,
+									BasicFileAttributes attrs) {
+								existing.add(file);
+								return FileVisitResult.CONTINUE;
+							}
+
+							@Override
+							public FileVisitResult visitFileFailed(Path file,
+									IOException exc) {
+								// Files which can't be read are checked
+								// separately
+								return FileVisitResult.CONTINUE;
+							}
+						});
+			} catch (IOException e) {
+				// All files are checked separately
+			}
+		}
+
+		/**
+		 * Adds the paths of all non-leaf child nodes of the node to the
+		 * expected directories. parentDirectory is the resource path of the
+		 * node ending with "/".
+		 */
+		private void collectDirectories(Node node, String parentDirectory) {
+			for (Element e : childElements(node)) {
+				if (!e.elements().isEmpty()) {
+					String path = parentDirectory + e.getName();
+					Path p = toPath(pathref.getFullResourcePath(
+							ResourceDirectory.this, path));
+					if (p != null)
+						expectedDirectories.add(p);
+					collectDirectories(e, path + "/");
+				}
+			}
+		}
+
+		/**
+		 * @return Whether the file exists. Files not found in the snapshot
+		 *         are checked separately, since they might be outside the base
+		 *         directory or the file system might be case-insensitive.
+		 */
+		public boolean exists(File f) {
+			Path p = toPath(f.getPath());
+			return (p != null && existing.contains(p)) || f.exists();
+		}
+
+		/**
+		 * @return The absolute, normalized path for the file name or null, if
+		 *         it is not a valid path
+		 */
+		private Path toPath(String file) {
+			try {
+				return new File(file).toPath().toAbsolutePath().normalize();
+			} catch (InvalidPathException e) {
+				return null;
+			}
+		}
 	}
 
 	// STATIC METHODS *********************************
@@ -170,7 +339,7 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 * single XML Node of this Directory relative to a given parent directory
 	 * and finally obtained through a given resource reference. If the second
 	 * parameter is null, the node will be assumed to be the common base
-	 * directory.
+	 * directory. The existence of files is looked up in the snapshot.
 	 * 
 	 * @see fs.xml.ResourceDependent#getExpectedResourceStructure() for a
 	 *      detailed account of how XML nodes represent a file structure
@@ -178,10 +347,8 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	 *             - If any requirement is not fulfilled. A list of all missing
 	 *             directories and files is appended.
 	 */
-	@SuppressWarnings("unchecked")
-	// To stop java complaining about List l = node.selectNodes
-	private void verifyNode(Node rd, String parentDirectory)
-			throws FileNotFoundException {
+	private void verifyNode(Node rd, String parentDirectory,
+			FileSnapshot snapshot) throws FileNotFoundException {
 		// In any case add a "/", since doubles will be ignored
 		parentDirectory = parentDirectory == null ? null : parentDirectory
 				+ "/";
@@ -190,7 +357,7 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 		if (parentDirectory != null) {
 			File dir = new File(pathref.getFullResourcePath(this,
 					parentDirectory + rd.getName()));
-			if (!dir.exists()) {
+			if (!snapshot.exists(dir)) {
 				throw new FileNotFoundException("Directory/File "
 						+ dir.getAbsolutePath() + " not found");
 			}
@@ -199,19 +366,13 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 		parentDirectory = parentDirectory == null ? "/" : parentDirectory + "/"
 				+ rd.getName() + "/";
 		// Get a list of all children
-		List<Node> l = null;
-		try {
-			l = rd.selectNodes("./*");
-		} catch (ClassCastException ce) {
-			throw new FileNotFoundException("Directory/File " + parentDirectory
-					+ "/" + rd.getName() + " not found. Wrong XML node type.");
-		}
-		if (l != null && !l.isEmpty()) {
+		List<Element> l = childElements(rd);
+		if (!l.isEmpty()) {
 			StringBuilder errorreport = new StringBuilder("");
 			boolean erroroccured = false;
-			for (Object n : l) {
+			for (Element n : l) {
 				try {
-					verifyNode((Node) n, parentDirectory);
+					verifyNode(n, parentDirectory, snapshot);
 				} catch (FileNotFoundException fe) {
 					errorreport.append(fe.getMessage() + "\n");
 					erroroccured = true;
@@ -223,55 +384,46 @@ public class ResourceDirectory implements ResourceDependent, ResourceReference {
 	}
 
 	/**
-	 * Merges two Nodes into one in the following way: Both nodes are regarded
-	 * as nodes of the same level. The top level node of the first one will
-	 * serve as root node of the resulting node. The top-level node of the
-	 * second one will be ignored. For each different sub-level node
-	 * ('different' by case-sensitive name comparison) in one of the two nodes
-	 * there will be a node at the same level in the resulting node tree. If
-	 * there are two nodes of the same name at the same level in both input
-	 * nodes, the content of the first one will prevail.<br>
-	 * This procedure assumes that no two sub-nodes of the same level in one of
-	 * the nodes bear the same name. It will also work however, if this is not
-	 * fulfilled. In this case, all nodes of primary will be preserved, while
-	 * only the last one of several equally named nodes of secondary will
-	 * remain. Merging will replace only one node of several equally named nodes
-	 * in primary.<br>
-	 * Node order might not be preserved and node content will be ignored.
+	 * Merges the structure of the second node into the first one in the
+	 * following way: Both nodes are regarded as nodes of the same level. The
+	 * top-level node of the second one will be ignored. For each sub-level
+	 * node of secondary, whose name ('different' by case-sensitive name
+	 * comparison) doesn't occur at the same level in primary, a node of this
+	 * name is added to primary. Then the sub-level nodes are merged
+	 * recursively.<br>
+	 * If several sub-nodes of the same level in primary bear the same name,
+	 * only the first one is merged with. Equally named nodes of secondary are
+	 * all merged into the same node.<br>
+	 * Node content is ignored. Each node is visited only once, so merging is
+	 * linear in the size of the nodes.
 	 */
-	private static DefaultElement mergeNodes(Node primary, Node secondary) {
-		// If the primary node is null, use the secondary.
-		// If both are null, return null
-		if (primary == null) {
-			primary = secondary;
-			if (secondary == null)
-				return null;
-		}
-		// Create root node
-		DefaultElement result = new DefaultElement(primary.getName());
-		// Copy primary nodes
-		for (Object o : primary.selectNodes("./*")) {
-			result.add(mergeNodes((Node) o, null));
+	private static void mergeNodes(Element primary, Element secondary) {
+		HashMap<String, Element> children = new HashMap<String, Element>();
+		for (Element e : childElements(primary)) {
+			if (!children.containsKey(e.getName()))
+				children.put(e.getName(), e);
 		}
-		// If the secondary is null, we're done
-		if (secondary == null)
-			return result;
-		// If not, merge the secondary nodes
-		for (Object l : secondary.selectNodes("./*")) {
-			Node s = (Node) l;
-			Node tomerge = result.selectSingleNode("./" + s.getName());
+		for (Element s : childElements(secondary)) {
+			Element tomerge = children.get(s.getName());
 			// If the node does not yet exist, just add it.
 			if (tomerge == null) {
-				result.add(mergeNodes(s, null));
-			}
-			// Otherwise delete the old one and insert the
-			// merged version
-			else {
-				result.remove(tomerge);
-				result.add(mergeNodes(tomerge, s));
+				tomerge = new DefaultElement(s.getName());
+				primary.add(tomerge);
+				children.put(s.getName(), tomerge);
 			}
+			mergeNodes(tomerge, s);
 		}
-		return result;
+	}
+
+	/**
+	 * @return The child elements of the node or an empty list, if it is not an
+	 *         element
+	 */
+	@SuppressWarnings("unchecked")
+	// Element.elements() returns a raw list of elements
+	private static List<Element> childElements(Node node) {
+		return node instanceof Element ? ((Element) node).elements()
+				: Collections.<Element> emptyList();
 	}
 
 }
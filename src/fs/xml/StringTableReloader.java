@@ -0,0 +1,272 @@
+package fs.xml;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Watches string table files for changes and publishes new versions to
+ * registered PolyglotStringLoaders. Files are watched with a
+ * java.nio.file.WatchService in a background thread, which also reads and
+ * validates a changed file. Only if the new version could be read completely,
+ * it replaces the table of every loader registered for this file (via
+ * PolyglotStringLoader.replaceTable(..)). Queries on these loaders are never
+ * blocked by a reload. If a file can't be read, the loaders keep their
+ * current table and a warning is logged. <br>
+ * The fsframework table can be watched as well, in which case the cached
+ * fsframework table and the default string loader are updated.
+ *
+ * @author Simon Hampe
+ *
+ */
+public class StringTableReloader {
+
+	// Events of a file are collected for this many milliseconds before the
+	// file is read, so that a file that is still being written is read only
+	// once
+	private final static long collectDelay = 200;
+
+	private final Logger logger = Logger.getLogger(StringTableReloader.class);
+
+	private final WatchService watchService;
+
+	// Maps each registered directory key to its directory
+	private final HashMap<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+	// Maps the absolute path of each watched file to its registration
+	private final HashMap<Path, Registration> registrations = new HashMap<Path, Registration>();
+
+	// The watching thread or null, if it is not running
+	private Thread watchThread = null;
+
+	/**
+	 * The loaders and resource reference associated to a file
+	 */
+	private static class Registration {
+		ResourceReference reference;
+		// Whether this is the fsframework table
+		boolean fsfwTable = false;
+		ArrayList<PolyglotStringLoader> loaders = new ArrayList<PolyglotStringLoader>();
+	}
+
+	// CONSTRUCTOR **************************************
+	// **************************************************
+
+	/**
+	 * Creates a reloader without any registered files. The watching thread
+	 * is started by start().
+	 *
+	 * @throws IOException
+	 *             - if no watch service can be created
+	 */
+	public StringTableReloader() throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+	}
+
+	// REGISTRATION *************************************
+	// **************************************************
+
+	/**
+	 * Registers the loader for the specified table file: Each time the file
+	 * changes, it is read using the resource reference r (or the default
+	 * reference, if r == null) and its content replaces the loader's table.
+	 * If the file is already registered, the resource reference given first
+	 * is used.
+	 *
+	 * @throws IOException
+	 *             - if the directory of the file can't be watched
+	 */
+	public synchronized void register(File tableFile, ResourceReference r,
+			PolyglotStringLoader loader) throws IOException {
+		Registration reg = getRegistration(tableFile, r);
+		if (loader != null && !reg.loaders.contains(loader))
+			reg.loaders.add(loader);
+	}
+
+	/**
+	 * Watches the fsframework table, as found via the resource reference r
+	 * (or the default reference, if r == null). Each time it changes, the
+	 * table is loaded via PolyglotStringTable.loadFsfwTable(..) and published
+	 * to the current default string loader.
+	 *
+	 * @throws IOException
+	 *             - if the directory of the file can't be watched
+	 */
+	public synchronized void registerFsfwTable(ResourceReference r)
+			throws IOException {
+		r = (r == null) ? FsfwDefaultReference.getDefaultReference() : r;
+		getRegistration(new File(r.getFullResourcePath(null,
+				"language/fsfwStringTable.xml")), r).fsfwTable = true;
+	}
+
+	/**
+	 * Removes the loader from all files it is registered for. Files without
+	 * any loaders are still watched, but nothing is published.
+	 */
+	public synchronized void unregister(PolyglotStringLoader loader) {
+		for (Registration reg : registrations.values()) {
+			reg.loaders.remove(loader);
+		}
+	}
+
+	/**
+	 * Returns the registration of the file, creating it (and watching its
+	 * directory) if necessary
+	 */
+	private Registration getRegistration(File tableFile, ResourceReference r)
+			throws IOException {
+		Path file = tableFile.toPath().toAbsolutePath().normalize();
+		Registration reg = registrations.get(file);
+		if (reg == null) {
+			Path dir = file.getParent();
+			if (!directories.containsValue(dir)) {
+				WatchKey key = dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				directories.put(key, dir);
+			}
+			reg = new Registration();
+			reg.reference = r;
+			registrations.put(file, reg);
+		}
+		return reg;
+	}
+
+	// CONTROL METHODS **********************************
+	// **************************************************
+
+	/**
+	 * Starts watching all registered files in a daemon thread. If the thread
+	 * is already running, this call is ignored.
+	 */
+	public synchronized void start() {
+		if (watchThread != null)
+			return;
+		watchThread = new Thread(new Runnable() {
+			public void run() {
+				watch();
+			}
+		}, "StringTableReloader");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Stops watching and releases the watch service. The reloader can't be
+	 * started again afterwards.
+	 */
+	public synchronized void stop() {
+		if (watchThread != null)
+			watchThread.interrupt();
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// Nothing left to do
+		}
+	}
+
+	/**
+	 * Reads the specified table file and publishes it to all loaders
+	 * registered for it, just as if a change had been detected. This call
+	 * blocks until the table has been read.
+	 *
+	 * @throws XMLWriteConfigurationException
+	 *             - if the file is not registered or can't be read. In this
+	 *             case no loader is changed.
+	 */
+	public void reload(File tableFile) throws XMLWriteConfigurationException {
+		Path file = tableFile.toPath().toAbsolutePath().normalize();
+		Registration reg;
+		ArrayList<PolyglotStringLoader> loaders;
+		synchronized (this) {
+			reg = registrations.get(file);
+			if (reg == null)
+				throw new XMLWriteConfigurationException(
+						"Can't reload unregistered file " + file);
+			loaders = new ArrayList<PolyglotStringLoader>(reg.loaders);
+		}
+		PolyglotStringTable table;
+		if (reg.fsfwTable) {
+			table = PolyglotStringTable.loadFsfwTable(reg.reference);
+			PolyglotStringLoader.getDefaultLoader().replaceTable(table);
+		} else {
+			try {
+				InputStream in = new FileInputStream(file.toFile());
+				try {
+					table = new PolyglotStringTable(in, reg.reference);
+				} finally {
+					in.close();
+				}
+			} catch (IOException ie) {
+				throw new XMLWriteConfigurationException("Can't read "
+						+ file + ": " + ie.getMessage());
+			}
+		}
+		for (PolyglotStringLoader loader : loaders) {
+			loader.replaceTable(table);
+		}
+	}
+
+	/**
+	 * The loop of the watching thread. It ends when the thread is
+	 * interrupted or the watch service is closed. A failed reload is logged
+	 * and doesn't stop the loop.
+	 */
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				// Collect further events, so that each file is read once
+				Thread.sleep(collectDelay);
+				HashSet<Path> changed = new HashSet<Path>();
+				while (key != null) {
+					collectChanges(key, changed);
+					key = watchService.poll();
+				}
+				for (Path file : changed) {
+					try {
+						reload(file.toFile());
+						logger.info("Reloaded string table " + file);
+					} catch (XMLWriteConfigurationException xe) {
+						logger.warn("Keeping previous version of " + file
+								+ ": " + xe.getMessage());
+					} catch (RuntimeException re) {
+						// Keep watching the other files
+						logger.error("Reloading " + file + " failed", re);
+					}
+				}
+			}
+		} catch (InterruptedException ie) {
+			// Stopped
+		} catch (ClosedWatchServiceException ce) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Adds all registered files affected by the events of the key to the set
+	 * and resets the key
+	 */
+	private synchronized void collectChanges(WatchKey key, HashSet<Path> changed) {
+		Path dir = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (dir == null)
+				continue;
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Events were lost, so check all files in this directory
+				for (Path file : registrations.keySet()) {
+					if (dir.equals(file.getParent()))
+						changed.add(file);
+				}
+			} else {
+				Path file = dir.resolve((Path) event.context());
+				if (registrations.containsKey(file))
+					changed.add(file);
+			}
+		}
+		key.reset();
+	}
+
+}
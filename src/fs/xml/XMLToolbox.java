@@ -1,6 +1,7 @@
 package fs.xml;
 
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.xml.parsers.*;
 import javax.xml.transform.*;
 import javax.xml.transform.stream.*;
 import javax.xml.validation.*;
@@ -12,6 +13,10 @@ import org.dom4j.io.*;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class contains a variety of useful static functions that implement
@@ -24,6 +29,52 @@ import java.nio.charset.Charset;
 
 public class XMLToolbox {
 
+	// Compiled schemas, mapping the canonical path of the schema file to the
+	// schema and the modification time of the file it was compiled from
+	private final static ConcurrentHashMap<String, CachedSchema> schemaCache = new ConcurrentHashMap<String, CachedSchema>();
+
+	// The schemas in schemaCache. Only validators of these are pooled. A
+	// schema is added before it is put into the cache and removed after it
+	// has been replaced there
+	private final static Set<Schema> cachedSchemas = Collections
+			.newSetFromMap(new ConcurrentHashMap<Schema, Boolean>());
+
+	// Is increased each time a cached schema is replaced by a recompiled one
+	private final static AtomicInteger schemaGeneration = new AtomicInteger();
+
+	// The validators of cached schemas for each thread. A validator can't be
+	// used by several threads at once, but can be reused after a reset. A
+	// WeakHashMap wouldn't help, since each validator references its schema.
+	// Instead the validators of replaced schemas are removed, when a thread
+	// notices a new schema generation
+	private final static ThreadLocal<ThreadValidators> validators = new ThreadLocal<ThreadValidators>() {
+		@Override
+		protected ThreadValidators initialValue() {
+			return new ThreadValidators();
+		}
+	};
+
+	/**
+	 * The validators of a thread and the schema generation they belong to
+	 */
+	private static class ThreadValidators {
+		int generation = schemaGeneration.get();
+		final HashMap<Schema, Validator> map = new HashMap<Schema, Validator>();
+	}
+
+	/**
+	 * A schema together with the modification time of its file
+	 */
+	private static class CachedSchema {
+		final Schema schema;
+		final long lastModified;
+
+		CachedSchema(Schema schema, long lastModified) {
+			this.schema = schema;
+			this.lastModified = lastModified;
+		}
+	}
+
 	// VALIDATION **************************************
 	// *************************************************
 
@@ -39,9 +90,7 @@ public class XMLToolbox {
 	 */
 	public static void validateXML(File xmlFile, File schemaFile)
 			throws SAXException, IOException {
-		SchemaFactory fac = SchemaFactory
-				.newInstance("http://www.w3.org/2001/XMLSchema");
-		Schema scheme = fac.newSchema(schemaFile);
+		Schema scheme = getSchemaObject(schemaFile);
 		StreamSource document = new StreamSource(xmlFile);
 		validateXML(document, scheme);
 	}
@@ -58,7 +107,7 @@ public class XMLToolbox {
 	 */
 	public static void validateXML(Source xmlSource, Schema scheme)
 			throws SAXException, IOException {
-		Validator val = scheme.newValidator();
+		Validator val = getValidator(scheme);
 		val.validate(xmlSource);
 	}
 
@@ -66,7 +115,9 @@ public class XMLToolbox {
 	 * This validates an already existent XML node according to a scheme using
 	 * the standard java SAX parser and validation implementations. This is
 	 * rather inefficient since the document has to be converted in a character
-	 * stream of XML code that will be read by the validator.
+	 * stream of XML code that will be read by the validator. If the document
+	 * is only built for reading it, consider validating it while parsing via
+	 * parseXMLStream(InputStream, ContentHandler, Schema) instead.
 	 * 
 	 * @throws SAXException
 	 *             - if a SAX Error occured during parsing of the actual
@@ -84,12 +135,15 @@ public class XMLToolbox {
 		StringReader in = new StringReader(out.toString());
 		StreamSource s = new StreamSource(in);
 		// Validate
-		Validator val = scheme.newValidator();
+		Validator val = getValidator(scheme);
 		val.validate(s);
 	}
 
 	/**
-	 * Constructs a Schema object from a given XML file
+	 * Constructs a Schema object from a given XML file. Compiled schemas are
+	 * cached for the whole process (by canonical path), so the file is only
+	 * compiled again, if it has been modified since. This method may be
+	 * called from any thread.
 	 * 
 	 * @throws IOException
 	 *             - if an I/O-Error occured while reading the file
@@ -98,29 +152,118 @@ public class XMLToolbox {
 	 */
 	public static Schema getSchemaObject(File schemaFile) throws SAXException,
 			IOException {
+		String path = schemaFile.getCanonicalPath();
+		long lastModified = schemaFile.lastModified();
+		CachedSchema cached = schemaCache.get(path);
+		if (cached != null && cached.lastModified == lastModified)
+			return cached.schema;
+		// Compile outside of any lock. If two threads do this at the same
+		// time, both results are valid and the last one is kept
 		SchemaFactory fac = SchemaFactory
 				.newInstance("http://www.w3.org/2001/XMLSchema");
 		Schema scheme = fac.newSchema(schemaFile);
+		cachedSchemas.add(scheme);
+		CachedSchema replaced = schemaCache.put(path, new CachedSchema(scheme,
+				lastModified));
+		if (replaced != null) {
+			cachedSchemas.remove(replaced.schema);
+			schemaGeneration.incrementAndGet();
+		}
 		return scheme;
 	}
 
+	/**
+	 * Returns a validator for the specified schema, which belongs to the
+	 * calling thread. If the schema has been obtained from
+	 * getSchemaObject(File), each thread reuses its validator for it, so the
+	 * returned validator must not be passed on to other threads. When a cached
+	 * schema has been recompiled, each thread discards all validators of
+	 * schemas which are no longer cached. For any other schema a new validator
+	 * is created.
+	 */
+	public static Validator getValidator(Schema scheme) {
+		if (!cachedSchemas.contains(scheme))
+			return scheme.newValidator();
+		ThreadValidators tv = validators.get();
+		HashMap<Schema, Validator> map = tv.map;
+		int generation = schemaGeneration.get();
+		if (tv.generation != generation) {
+			map.keySet().retainAll(cachedSchemas);
+			tv.generation = generation;
+		}
+		Validator val = map.get(scheme);
+		if (val == null) {
+			val = scheme.newValidator();
+			map.put(scheme, val);
+		} else
+			val.reset();
+		return val;
+	}
+
 	// XML OUTPUT / INPUT ********************************
 	// ***************************************************
 
 	/**
 	 * Tries to save an org.dom4j.Document object in the specified file in the
 	 * standard "pretty format". It uses an OutputStreamWriter with the XMLWriter that ensures encoding UTF-8.
+	 * The document is written to a temporary file first, which then replaces the specified file, so an 
+	 * existing file is never left half-written.
 	 * 
 	 * @throws IOException
 	 *             - if an I/O-error occured during saving
 	 */
 	public static void saveXML(Document doc, String filename)
 			throws IOException {
-		OutputFormat format = OutputFormat.createPrettyPrint();
-		FileOutputStream fos = new FileOutputStream(new File(filename));
-		XMLWriter writer = new XMLWriter(new OutputStreamWriter(fos, Charset.forName("UTF-8")), format);
-		writer.write(doc);
-		writer.close();
+		File target = new File(filename);
+		File temp = createTemporarySibling(target);
+		try {
+			OutputFormat format = OutputFormat.createPrettyPrint();
+			FileOutputStream fos = new FileOutputStream(temp);
+			try {
+				XMLWriter writer = new XMLWriter(new OutputStreamWriter(fos, Charset.forName("UTF-8")), format);
+				writer.write(doc);
+				writer.flush();
+				fos.getFD().sync();
+			} finally {
+				//Closing the stream closes the writer as well
+				fos.close();
+			}
+			replaceFile(temp, target);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Creates an empty temporary file in the same directory as the specified
+	 * file. Since it lies on the same file system, it can later replace the
+	 * file via replaceFile(File, File).
+	 * 
+	 * @throws IOException
+	 *             - if the file can't be created
+	 */
+	public static File createTemporarySibling(File target) throws IOException {
+		File dir = target.getAbsoluteFile().getParentFile();
+		return File.createTempFile("." + target.getName() + ".", ".tmp", dir);
+	}
+
+	/**
+	 * Moves source to target, replacing target if it exists. The move is
+	 * atomic, if the file system supports this, so that readers either see
+	 * the old or the new file.
+	 * 
+	 * @throws IOException
+	 *             - if the file can't be moved
+	 */
+	public static void replaceFile(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ae) {
+			Files.move(source.toPath(), target.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
 	/**
@@ -139,6 +282,70 @@ public class XMLToolbox {
 		return doc;
 	}
 
+	/**
+	 * Parses an XML stream with a namespace aware SAX parser and passes all
+	 * content events directly to the specified handler, without building a
+	 * document. The stream is not closed.
+	 * 
+	 * @throws SAXException
+	 *             - if the stream is not a valid XML document or the handler
+	 *             rejects its content
+	 * @throws IOException
+	 *             - if an I/O-error occured while reading the stream
+	 */
+	public static void parseXMLStream(InputStream in, ContentHandler handler)
+			throws SAXException, IOException {
+		parseXMLStream(in, handler, null);
+	}
+
+	/**
+	 * Parses an XML stream with a namespace aware SAX parser and passes all
+	 * content events through a validator for the specified schema on to the
+	 * handler. The document is thus read, validated and handled in a single
+	 * pass, without building a document. Note that the handler will already
+	 * have received the beginning of the document, when a validation error
+	 * further down is reported. If scheme == null, the stream is not
+	 * validated. The stream is not closed.
+	 * 
+	 * @throws SAXException
+	 *             - if the stream is not a valid XML document, violates the
+	 *             schema or the handler rejects its content
+	 * @throws IOException
+	 *             - if an I/O-error occured while reading the stream
+	 */
+	public static void parseXMLStream(InputStream in, ContentHandler handler,
+			Schema scheme) throws SAXException, IOException {
+		SAXParserFactory fac = SAXParserFactory.newInstance();
+		fac.setNamespaceAware(true);
+		try {
+			XMLReader reader = fac.newSAXParser().getXMLReader();
+			// Report errors only via exceptions, not on the console
+			reader.setErrorHandler(new ErrorHandler() {
+				public void warning(SAXParseException exception) {
+				}
+
+				public void error(SAXParseException exception)
+						throws SAXException {
+					throw exception;
+				}
+
+				public void fatalError(SAXParseException exception)
+						throws SAXException {
+					throw exception;
+				}
+			});
+			if (scheme != null) {
+				ValidatorHandler val = scheme.newValidatorHandler();
+				val.setContentHandler(handler);
+				reader.setContentHandler(val);
+			} else
+				reader.setContentHandler(handler);
+			reader.parse(new InputSource(in));
+		} catch (ParserConfigurationException pe) {
+			throw new SAXException(pe);
+		}
+	}
+
 	/**
 	 * Returns a document written in the standard 'pretty format' of dom4j
 	 */